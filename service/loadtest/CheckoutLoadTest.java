@@ -0,0 +1,90 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下单接口压测工具
+ * 用法：java CheckoutLoadTest.java <baseUrl> <商品名称> [并发数] [持续秒数]
+ * 例如：java CheckoutLoadTest.java http://localhost:8080 测试商品 200 30
+ */
+public class CheckoutLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("用法：java CheckoutLoadTest.java <baseUrl> <商品名称> [并发数] [持续秒数]");
+            return;
+        }
+        String baseUrl = args[0];
+        String product = args[1];
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int durationSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(8))
+                .build();
+        String body = "{\"product\":\"" + product + "\",\"type\":\"usdt\",\"queryKey\":\"loadtest\"}";
+
+        AtomicLong success = new AtomicLong();
+        AtomicLong failure = new AtomicLong();
+        List<List<Long>> latencies = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            List<Long> workerLatencies = new ArrayList<>();
+            latencies.add(workerLatencies);
+            workers.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/payment/create"))
+                            .timeout(Duration.ofSeconds(30))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 200 && response.body().contains("\"success\":true")) {
+                            success.incrementAndGet();
+                        } else {
+                            failure.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failure.incrementAndGet();
+                    }
+                    workerLatencies.add(System.nanoTime() - start);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationSeconds + 60L, TimeUnit.SECONDS);
+
+        List<Long> all = new ArrayList<>();
+        latencies.forEach(all::addAll);
+        Collections.sort(all);
+
+        long total = success.get() + failure.get();
+        System.out.printf("并发数: %d, 持续: %d 秒%n", concurrency, durationSeconds);
+        System.out.printf("请求总数: %d, 成功: %d, 失败: %d%n", total, success.get(), failure.get());
+        System.out.printf("吞吐量: %.1f 请求/秒%n", total / (double) durationSeconds);
+        if (!all.isEmpty()) {
+            System.out.printf("延迟(ms) p50: %.1f, p95: %.1f, p99: %.1f, max: %.1f%n",
+                    percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99), all.get(all.size() - 1) / 1e6);
+        }
+        System.exit(0);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        int index = (int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1);
+        return sorted.get(Math.max(index, 0)) / 1e6;
+    }
+}
@@ -0,0 +1,47 @@
+#!/bin/bash
+# 对比平台线程与虚拟线程模式下的下单吞吐量
+# 需要 JDK 21+，并且数据库中已有一个有库存的商品（压测会创建大量待支付订单，请使用测试库）
+# 用法：./loadtest/compare-threading.sh <商品名称> [并发数] [持续秒数]
+#
+# 两轮测试都使用本地模拟支付网关（延迟200ms），Tomcat线程数限制为50，
+# 以模拟线程池先于CPU成为瓶颈的部署环境。
+
+set -e
+cd "$(dirname "$0")/.."
+
+PRODUCT=${1:?请指定商品名称}
+CONCURRENCY=${2:-400}
+DURATION=${3:-30}
+PORT=8080
+
+sh ./mvnw -q -DskipTests package
+JAR=$(ls target/service-*.jar | head -n 1)
+
+run_round() {
+    local mode=$1
+    local virtual=$2
+    echo "===== ${mode} ====="
+    VIRTUAL_THREADS_ENABLED=${virtual} java -jar "${JAR}" \
+        --server.port=${PORT} \
+        --server.tomcat.threads.max=50 \
+        --payment.stub.enabled=true \
+        --payment.stub.latency-ms=200 \
+        --payment.api.base-url=http://localhost:${PORT}/stub/payment-gateway \
+        --payment.gateway.max-concurrent=1000 \
+        > "target/loadtest-${mode}.log" 2>&1 &
+    local pid=$!
+    trap "kill ${pid} 2>/dev/null" EXIT
+
+    until curl -s "http://localhost:${PORT}/api/products" > /dev/null; do
+        sleep 1
+    done
+
+    java loadtest/CheckoutLoadTest.java "http://localhost:${PORT}" "${PRODUCT}" "${CONCURRENCY}" "${DURATION}"
+
+    kill ${pid}
+    wait ${pid} 2>/dev/null || true
+    trap - EXIT
+}
+
+run_round platform false
+run_round virtual true
@@ -1,19 +1,18 @@
 package space.kuikui.service.config;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
-import space.kuikui.service.entity.User;
-import space.kuikui.service.service.UserService;
+import space.kuikui.service.service.UserPrincipalCache;
 import space.kuikui.service.util.JwtUtil;
 
 import java.io.IOException;
@@ -26,50 +25,46 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtUtil jwtUtil;
 
     @Autowired
-    @Lazy
-    private UserService userService;
+    private UserPrincipalCache userPrincipalCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                   FilterChain filterChain) throws ServletException, IOException {
         
         String authHeader = request.getHeader("Authorization");
-        String token = null;
-        String username = null;
+        Claims claims = null;
 
-        // 从请求头中提取JWT Token
+        // 从请求头中提取JWT Token，签名和过期时间只验证一次
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
+            String token = authHeader.substring(7);
             try {
-                username = jwtUtil.getUsernameFromToken(token);
+                claims = jwtUtil.parseToken(token);
             } catch (Exception e) {
                 logger.warn("JWT Token解析失败: " + e.getMessage());
             }
         }
 
         // 如果token有效且当前没有认证信息
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            
-            // 验证token有效性
-            if (jwtUtil.isValidToken(token) && !jwtUtil.isTokenExpired(token)) {
-                
-                // 获取用户信息
-                User user = userService.getUserByUsername(username);
-                
-                if (user != null && user.getIsActive()) {
-                    // 创建认证对象
-                    String role = jwtUtil.getRoleFromToken(token);
-                    SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + role);
-                    
-                    UsernamePasswordAuthenticationToken authToken = 
-                        new UsernamePasswordAuthenticationToken(
-                            username, null, Collections.singletonList(authority));
-                    
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    
-                    // 设置认证信息
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
+        if (claims != null && claims.get("userId") != null
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            String username = claims.getSubject();
+            Long userId = Long.valueOf(claims.get("userId").toString());
+
+            // 获取用户信息（短时间缓存，禁用或角色变更时失效），角色以数据库为准
+            UserPrincipalCache.Principal principal = userPrincipalCache.get(userId);
+
+            if (principal != null && principal.isActive() && principal.getUsername().equals(username)) {
+                // 创建认证对象
+                SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + principal.getRole());
+
+                UsernamePasswordAuthenticationToken authToken =
+                    new UsernamePasswordAuthenticationToken(
+                        username, null, Collections.singletonList(authority));
+
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+
+                // 设置认证信息
+                SecurityContextHolder.getContext().setAuthentication(authToken);
             }
         }
 
@@ -3,12 +3,15 @@ package space.kuikui.service.config;
 import com.baomidou.mybatisplus.core.handlers.MetaObjectHandler;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import org.apache.ibatis.mapping.DatabaseIdProvider;
+import org.apache.ibatis.mapping.VendorDatabaseIdProvider;
 import org.apache.ibatis.reflection.MetaObject;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.Properties;
 
 @Configuration
 public class MybatisPlusConfig {
@@ -23,6 +26,19 @@ public class MybatisPlusConfig {
         return interceptor;
     }
 
+    /**
+     * 数据库厂商标识，用于按数据库选择不同的SQL（如MySQL的SKIP LOCKED）
+     */
+    @Bean
+    public DatabaseIdProvider databaseIdProvider() {
+        VendorDatabaseIdProvider provider = new VendorDatabaseIdProvider();
+        Properties properties = new Properties();
+        properties.setProperty("MySQL", "mysql");
+        properties.setProperty("H2", "h2");
+        provider.setProperties(properties);
+        return provider;
+    }
+
     /**
      * 自动填充配置
      */
@@ -41,6 +41,9 @@ public class SecurityConfig {
                 // 支付相关接口允许所有人访问（公开购买）
                 .requestMatchers("/api/payment/**").permitAll()
                 
+                // 模拟支付网关（仅在 payment.stub.enabled=true 时存在）
+                .requestMatchers("/stub/**").permitAll()
+                
                 // 商品查看允许所有人访问（GET请求）
                 .requestMatchers("GET", "/api/products").permitAll()
                 .requestMatchers("GET", "/api/products/*").permitAll()
@@ -56,6 +59,9 @@ public class SecurityConfig {
                 // 订单管理需要ADMIN权限
                 .requestMatchers("/api/orders/**").hasRole("ADMIN")
                 
+                // 用户管理需要ADMIN权限
+                .requestMatchers("/api/users/**").hasRole("ADMIN")
+                
                 // 统计数据需要ADMIN权限
                 .requestMatchers("/api/statistics/**").hasRole("ADMIN")
                 
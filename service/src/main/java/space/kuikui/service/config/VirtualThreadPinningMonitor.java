@@ -0,0 +1,116 @@
+package space.kuikui.service.config;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.util.ExecutorFactory;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 虚拟线程钉住（pinning）监控
+ * 虚拟线程在 synchronized 代码块或本地方法中阻塞时会占住载体线程，
+ * 这里通过 JFR 的 jdk.VirtualThreadPinned 事件统计发生位置，便于定位需要改为 ReentrantLock 的代码。
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final int MAX_TRACKED_SITES = 100;
+
+    private static final int STACK_DEPTH = 6;
+
+    @Value("${virtual-threads.pinning.threshold-ms:20}")
+    private long thresholdMs;
+
+    private RecordingStream recordingStream;
+
+    private final LongAdder pinnedCount = new LongAdder();
+
+    private final ConcurrentHashMap<String, LongAdder> pinnedSites = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!ExecutorFactory.isVirtualThreadSupported()) {
+            System.err.println("已启用虚拟线程模式，但当前JVM不支持虚拟线程（需要JDK 21+），将继续使用平台线程");
+            return;
+        }
+
+        recordingStream = new RecordingStream();
+        recordingStream.enable("jdk.VirtualThreadPinned")
+                .withThreshold(Duration.ofMillis(thresholdMs))
+                .withStackTrace();
+        recordingStream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        recordingStream.startAsync();
+        System.out.println("虚拟线程钉住监控已启动，阈值 " + thresholdMs + " 毫秒");
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.increment();
+        String site = describe(event.getStackTrace());
+
+        LongAdder counter = pinnedSites.get(site);
+        if (counter == null && pinnedSites.size() < MAX_TRACKED_SITES) {
+            counter = pinnedSites.computeIfAbsent(site, key -> {
+                System.err.println("检测到虚拟线程钉住 (" + event.getDuration().toMillis() + "ms):\n" + key);
+                return new LongAdder();
+            });
+        }
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static String describe(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "未知位置";
+        }
+        StringBuilder site = new StringBuilder();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(STACK_DEPTH, frames.size()); i++) {
+            RecordedFrame frame = frames.get(i);
+            site.append("    at ")
+                    .append(frame.getMethod().getType().getName())
+                    .append('.')
+                    .append(frame.getMethod().getName())
+                    .append(':')
+                    .append(frame.getLineNumber())
+                    .append('\n');
+        }
+        return site.toString();
+    }
+
+    /**
+     * 钉住统计：总次数及各位置次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Long> sites = new HashMap<>();
+        pinnedSites.forEach((site, counter) -> sites.put(site, counter.sum()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", recordingStream != null);
+        stats.put("thresholdMs", thresholdMs);
+        stats.put("pinnedCount", pinnedCount.sum());
+        stats.put("sites", sites);
+        return stats;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
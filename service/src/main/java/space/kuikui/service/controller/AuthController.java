@@ -1,5 +1,6 @@
 package space.kuikui.service.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import space.kuikui.service.entity.User;
@@ -7,6 +8,8 @@ import space.kuikui.service.service.UserService;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -40,19 +43,28 @@ public class AuthController {
     
     /**
      * 用户登录
+     * 密码校验在独立线程池中异步执行，不占用Tomcat工作线程
      */
     @PostMapping("/login")
-    public Map<String, Object> login(@RequestBody Map<String, Object> request) {
+    public CompletableFuture<Map<String, Object>> login(@RequestBody Map<String, Object> request,
+                                                        HttpServletRequest httpRequest) {
         try {
             String username = (String) request.get("username");
             String password = (String) request.get("password");
             
-            return userService.login(username, password);
+            return userService.login(username, password, httpRequest.getRemoteAddr())
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        Map<String, Object> result = new HashMap<>();
+                        result.put("success", false);
+                        result.put("message", "登录失败：" + cause.getMessage());
+                        return result;
+                    });
         } catch (Exception e) {
             Map<String, Object> result = new HashMap<>();
             result.put("success", false);
             result.put("message", "登录失败：" + e.getMessage());
-            return result;
+            return CompletableFuture.completedFuture(result);
         }
     }
     
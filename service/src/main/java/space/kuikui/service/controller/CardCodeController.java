@@ -1,10 +1,15 @@
 package space.kuikui.service.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import space.kuikui.service.entity.CardCode;
+import space.kuikui.service.entity.CardCodeJob;
+import space.kuikui.service.service.CardCodeJobService;
 import space.kuikui.service.service.CardCodeService;
 
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -18,6 +23,9 @@ public class CardCodeController {
     @Autowired
     private CardCodeService cardCodeService;
     
+    @Autowired
+    private CardCodeJobService cardCodeJobService;
+    
     /**
      * 为商品生成卡密
      */
@@ -29,10 +37,11 @@ public class CardCodeController {
             int count = Integer.parseInt(request.get("count").toString());
             String prefix = (String) request.get("prefix");
             
-            List<CardCode> cardCodes = cardCodeService.generateCardCodes(productId, count, prefix);
+            Map<String, Object> result = cardCodeService.generateCardCodes(productId, count, prefix);
             response.put("success", true);
-            response.put("data", cardCodes);
-            response.put("message", "成功生成 " + cardCodes.size() + " 个卡密");
+            response.put("data", result);
+            response.put("message", String.format("成功生成 %s 个卡密，耗时 %s 毫秒（%s 个/秒）",
+                    result.get("generatedCount"), result.get("elapsedMs"), result.get("codesPerSecond")));
         } catch (Exception e) {
             response.put("error", e.getMessage());
         }
@@ -79,6 +88,110 @@ public class CardCodeController {
         return response;
     }
     
+    /**
+     * 流式导入卡密文件（每行一个卡密，适用于大文件）
+     */
+    @PostMapping(value = "/import/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Map<String, Object> importCardCodesStream(@RequestParam("productId") Long productId,
+                                                     @RequestParam("file") MultipartFile file) {
+        Map<String, Object> response = new HashMap<>();
+        try (InputStream inputStream = file.getInputStream()) {
+            Map<String, Object> report = cardCodeService.importCardCodes(productId, inputStream);
+            response.put("success", true);
+            response.put("data", report);
+            response.put("message", String.format("成功导入 %s 个卡密，跳过 %s 个重复或无效的卡密",
+                    report.get("insertedCount"), report.get("skippedCount")));
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
+    /**
+     * 提交异步导入任务（文件上传后立即返回任务ID）
+     */
+    @PostMapping(value = "/jobs/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Map<String, Object> submitImportJob(@RequestParam("productId") Long productId,
+                                               @RequestParam("file") MultipartFile file) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            CardCodeJob job = cardCodeJobService.submitImportJob(productId, file);
+            response.put("success", true);
+            response.put("jobId", job.getJobId());
+            response.put("message", "导入任务已提交");
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
+    /**
+     * 提交异步生成任务
+     */
+    @PostMapping("/jobs/generate")
+    public Map<String, Object> submitGenerateJob(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Long productId = Long.valueOf(request.get("productId").toString());
+            int count = Integer.parseInt(request.get("count").toString());
+            String prefix = (String) request.get("prefix");
+            
+            CardCodeJob job = cardCodeJobService.submitGenerateJob(productId, count, prefix);
+            response.put("success", true);
+            response.put("jobId", job.getJobId());
+            response.put("message", "生成任务已提交");
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
+    /**
+     * 查询任务进度
+     */
+    @GetMapping("/jobs/{jobId}")
+    public Map<String, Object> getJobProgress(@PathVariable String jobId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", cardCodeJobService.getJobProgress(jobId));
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
+    /**
+     * 最近的任务列表
+     */
+    @GetMapping("/jobs")
+    public Map<String, Object> getRecentJobs(@RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", cardCodeJobService.getRecentJobs(Math.min(limit, 100)));
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
+    /**
+     * 继续执行失败的任务
+     */
+    @PostMapping("/jobs/{jobId}/resume")
+    public Map<String, Object> resumeJob(@PathVariable String jobId) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            cardCodeJobService.resumeJob(jobId);
+            response.put("success", true);
+            response.put("message", "任务已重新提交");
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
     /**
      * 获取商品的所有卡密
      */
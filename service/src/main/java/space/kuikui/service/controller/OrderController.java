@@ -3,6 +3,7 @@ package space.kuikui.service.controller;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import space.kuikui.service.entity.Order;
+import space.kuikui.service.service.ArchiveService;
 import space.kuikui.service.service.OrderService;
 
 import java.util.HashMap;
@@ -17,16 +18,35 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
     
+    @Autowired
+    private ArchiveService archiveService;
+    
     /**
      * 获取所有订单列表（分页）
+     * mode=cursor 时使用游标分页：传入上一页返回的 nextCursor 获取下一页，total 为近似值
      */
     @GetMapping("/list")
     public Map<String, Object> getAllOrders(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int size,
-            @RequestParam(required = false) String status) {
+            @RequestParam(required = false) String status,
+            @RequestParam(defaultValue = "page") String mode,
+            @RequestParam(required = false) String cursor) {
         Map<String, Object> response = new HashMap<>();
         try {
+            if ("cursor".equals(mode)) {
+                int pageSize = Math.max(1, Math.min(size, 200));
+                Map<String, Object> result = orderService.getOrdersPage(cursor, pageSize, status);
+                response.put("success", true);
+                response.put("data", result.get("orders"));
+                response.put("total", result.get("total"));
+                response.put("totalApproximate", true);
+                response.put("nextCursor", result.get("nextCursor"));
+                response.put("hasMore", result.get("hasMore"));
+                response.put("size", pageSize);
+                return response;
+            }
+            
             Map<String, Object> result = orderService.getOrdersList(page, size, status);
             response.put("success", true);
             response.put("data", result.get("orders"));
@@ -94,6 +114,7 @@ public class OrderController {
             
             response.put("success", true);
             response.put("deletedCount", deletedCount);
+            response.put("report", orderService.getLastCleanupReport());
             response.put("message", String.format("成功清理了 %d 个超过 %d 小时的未付款订单", deletedCount, hours));
             
         } catch (Exception e) {
@@ -103,6 +124,26 @@ public class OrderController {
         return response;
     }
     
+    /**
+     * 手动执行一次数据归档（已发货订单和已使用卡密）
+     */
+    @PostMapping("/archive")
+    public Map<String, Object> archive() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Map<String, Object> report = archiveService.archive();
+            response.put("success", "COMPLETED".equals(report.get("status")));
+            response.put("report", report);
+            if (!"COMPLETED".equals(report.get("status"))) {
+                response.put("error", "数据归档失败: " + report.get("error"));
+            }
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "数据归档失败: " + e.getMessage());
+        }
+        return response;
+    }
+    
     /**
      * 批量处理未发货订单
      */
@@ -110,9 +151,10 @@ public class OrderController {
     public Map<String, Object> processUndeliveredOrders() {
         Map<String, Object> response = new HashMap<>();
         try {
-            orderService.processUndeliveredOrders();
+            int deliveredCount = orderService.processUndeliveredOrders();
             response.put("success", true);
-            response.put("message", "已处理所有未发货的已支付订单");
+            response.put("deliveredCount", deliveredCount);
+            response.put("message", String.format("已处理所有未发货的已支付订单，成功发货 %d 个", deliveredCount));
         } catch (Exception e) {
             response.put("success", false);
             response.put("error", "处理订单失败: " + e.getMessage());
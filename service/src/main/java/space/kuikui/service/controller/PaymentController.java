@@ -1,35 +1,48 @@
 package space.kuikui.service.controller;
 
-import cn.hutool.http.HttpUtil;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import space.kuikui.service.entity.Order;
 import space.kuikui.service.entity.Product;
 import space.kuikui.service.repository.OrderRepository;
+import space.kuikui.service.service.OrderEventRegistry;
 import space.kuikui.service.service.OrderService;
+import space.kuikui.service.service.PaymentGatewayClient;
+import space.kuikui.service.service.PaymentNotificationService;
 import space.kuikui.service.service.ProductService;
+import space.kuikui.service.service.QueryKeyResultCache;
+import space.kuikui.service.service.RequestRateLimiter;
+import space.kuikui.service.task.OrderExpiryScheduler;
+import space.kuikui.service.task.PaymentConfirmationPoller;
 
-import java.math.BigDecimal;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/payment")
 @CrossOrigin(origins = "*")
 public class PaymentController {
 
+    private static final int DEFAULT_QUERY_PAGE_SIZE = 20;
+
+    private static final int MAX_QUERY_PAGE_SIZE = 100;
+
     @Value("${payment.wallet.default-address}")
     private String defaultWalletAddress;
     
-    @Value("${payment.api.base-url}")
-    private String apiBaseUrl;
-
     @Autowired
     private ProductService productService;
     
@@ -38,17 +51,46 @@ public class PaymentController {
     
     @Autowired
     private OrderRepository orderRepository;
+    
+    @Autowired
+    private PaymentGatewayClient paymentGatewayClient;
+
+    @Autowired
+    private PaymentConfirmationPoller paymentConfirmationPoller;
+    
+    @Autowired
+    private PaymentNotificationService paymentNotificationService;
+    
+    @Autowired
+    private RequestRateLimiter requestRateLimiter;
+    
+    @Autowired
+    private QueryKeyResultCache queryKeyResultCache;
+    
+    @Autowired
+    private OrderEventRegistry orderEventRegistry;
+    
+    @Autowired
+    private OrderExpiryScheduler orderExpiryScheduler;
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * 创建支付订单
+     * 支付网关调用为异步执行，等待网关响应期间不占用Tomcat工作线程
      */
     @PostMapping("/create")
-    public Map<String, Object> createOrder(@RequestBody Map<String, Object> request) {
+    public CompletableFuture<Map<String, Object>> createOrder(@RequestBody Map<String, Object> request,
+                                                              HttpServletRequest httpRequest,
+                                                              HttpServletResponse httpResponse) {
         Map<String, Object> response = new HashMap<>();
         
         try {
+            if (isRateLimited(RequestRateLimiter.Limit.CREATE_BY_IP, RequestRateLimiter.Limit.CREATE_BY_QUERY_KEY,
+                    (String) request.get("queryKey"), httpRequest, httpResponse, response)) {
+                return CompletableFuture.completedFuture(response);
+            }
+            
             String productName = (String) request.get("product");
             String walletAddress = (String) request.get("name");
             String paymentType = (String) request.getOrDefault("type", "usdt");
@@ -66,14 +108,14 @@ public class PaymentController {
             if (product == null) {
                 response.put("success", false);
                 response.put("error", "商品不存在");
-                return response;
+                return CompletableFuture.completedFuture(response);
             }
             
             // 检查是否有可用卡密
             if (!productService.hasAvailableCardCodes(product)) {
                 response.put("success", false);
                 response.put("error", "商品暂时缺货");
-                return response;
+                return CompletableFuture.completedFuture(response);
             }
             
             // 创建订单
@@ -88,41 +130,51 @@ public class PaymentController {
             order.setQueryKey(queryKey);
             
             Order savedOrder = orderService.createOrder(order);
+            orderExpiryScheduler.track(savedOrder);
             
             // 调用支付API
-            String encodedProduct = URLEncoder.encode(productName, "UTF-8");
-            String paymentUrl = apiBaseUrl + "?way=pay&name=" + walletAddress + 
-                                "&type=" + paymentType + 
-                                "&value=" + product.getPrice() + 
-                                "&product=" + encodedProduct + 
-                                "&jump=-";
-            
-            String paymentResponse = HttpUtil.get(paymentUrl);
-            
-            // 解析支付响应获取oid
-            JsonNode paymentJsonNode = objectMapper.readTree(paymentResponse);
-            String paymentOid = paymentJsonNode.has("oid") ? paymentJsonNode.get("oid").asText() : null;
-            
-            // 如果获取到了支付系统的oid，更新本地订单记录
-            if (paymentOid != null) {
-                // 使用支付系统的oid作为订单ID
-                savedOrder.setOrderId(paymentOid);
-                orderRepository.updateById(savedOrder);
-            }
-            
-            response.put("success", true);
-            response.put("orderId", savedOrder.getOrderId());
-            response.put("paymentResponse", paymentResponse);
-            response.put("amount", product.getPrice());
-            response.put("product", productName);
-            response.put("queryKey", queryKey != null ? queryKey : "");
+            // 更新订单在独立的执行器中进行，不占用网关HTTP客户端的回调线程
+            return paymentGatewayClient.createPaymentAsync(walletAddress, paymentType, product.getPrice(), productName)
+                    .thenApplyAsync(paymentResponse -> {
+                        try {
+                            // 解析支付响应获取oid
+                            JsonNode paymentJsonNode = objectMapper.readTree(paymentResponse);
+                            String paymentOid = paymentJsonNode.has("oid") ? paymentJsonNode.get("oid").asText() : null;
+                            
+                            // 如果获取到了支付系统的oid，更新本地订单记录
+                            if (paymentOid != null) {
+                                // 使用支付系统的oid作为订单ID
+                                savedOrder.setOrderId(paymentOid);
+                                orderRepository.updateById(savedOrder);
+                                queryKeyResultCache.invalidate(savedOrder.getQueryKey());
+                            }
+                            // 加入支付确认轮询队列
+                            paymentConfirmationPoller.track(savedOrder);
+                        } catch (Exception e) {
+                            throw new RuntimeException(e.getMessage(), e);
+                        }
+                        
+                        response.put("success", true);
+                        response.put("orderId", savedOrder.getOrderId());
+                        response.put("paymentResponse", paymentResponse);
+                        response.put("amount", product.getPrice());
+                        response.put("product", productName);
+                        response.put("queryKey", queryKey != null ? queryKey : "");
+                        return response;
+                    }, paymentGatewayClient.completionExecutor())
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        Map<String, Object> errorResponse = new HashMap<>();
+                        errorResponse.put("success", false);
+                        errorResponse.put("error", cause.getMessage());
+                        return errorResponse;
+                    });
             
         } catch (Exception e) {
             response.put("success", false);
             response.put("error", e.getMessage());
+            return CompletableFuture.completedFuture(response);
         }
-        
-        return response;
     }
     
     /**
@@ -155,11 +207,42 @@ public class PaymentController {
         return response;
     }
     
+    /**
+     * 订阅订单发货事件（SSE）
+     * 连接挂起直到订单发货、过期或超时，超时后客户端可重新订阅，代替轮询订单详情
+     */
+    @GetMapping(value = "/order/{orderId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeOrderEvents(@PathVariable String orderId) {
+        SseEmitter emitter;
+        try {
+            emitter = orderEventRegistry.subscribe(orderId);
+        } catch (Exception e) {
+            return errorEmitter(e.getMessage());
+        }
+        
+        try {
+            // 先订阅再检查订单状态，避免错过订阅之前完成的发货
+            Order order = orderService.getOrderByOrderId(orderId);
+            if (order == null) {
+                sendError(emitter, "订单不存在");
+            } else if (order.getIsDelivered()) {
+                orderEventRegistry.sendDelivered(emitter, order);
+            } else if (order.getStatus() == Order.OrderStatus.EXPIRED) {
+                orderEventRegistry.sendExpired(emitter, order);
+            }
+        } catch (Exception e) {
+            sendError(emitter, e.getMessage());
+        }
+        return emitter;
+    }
+    
     /**
      * 根据查询密钥查询订单
      */
     @PostMapping("/query-by-key")
-    public Map<String, Object> queryOrderByKey(@RequestBody Map<String, Object> request) {
+    public Map<String, Object> queryOrderByKey(@RequestBody Map<String, Object> request,
+                                               HttpServletRequest httpRequest,
+                                               HttpServletResponse httpResponse) {
         Map<String, Object> response = new HashMap<>();
         
         try {
@@ -171,23 +254,32 @@ public class PaymentController {
                 return response;
             }
             
-            List<Order> orders = orderService.getAllOrdersByQueryKey(queryKey.trim());
+            if (isRateLimited(RequestRateLimiter.Limit.QUERY_BY_IP, RequestRateLimiter.Limit.QUERY_BY_QUERY_KEY,
+                    queryKey.trim(), httpRequest, httpResponse, response)) {
+                return response;
+            }
+            
+            QueryKeyResultCache.Result result = orderService.getRecentOrdersByQueryKey(queryKey.trim());
+            List<Order> allOrders = result.getOrders();
             
-            if (orders != null && !orders.isEmpty()) {
-                // 为每个订单加载商品信息
-                for (Order order : orders) {
-                    Product product = productService.getProductById(order.getProductId());
-                    if (product != null) {
-                        order.setProduct(product);
-                    }
-                }
+            if (!allOrders.isEmpty()) {
+                // 分页（只在最近的订单范围内分页）
+                int page = Math.max(1, toInt(request.get("page"), 1));
+                int size = Math.min(Math.max(1, toInt(request.get("size"), DEFAULT_QUERY_PAGE_SIZE)), MAX_QUERY_PAGE_SIZE);
+                int fromIndex = Math.min((page - 1) * size, allOrders.size());
+                int toIndex = Math.min(fromIndex + size, allOrders.size());
+                List<Order> orders = allOrders.subList(fromIndex, toIndex);
                 
                 response.put("success", true);
                 response.put("orders", orders);
-                response.put("totalCount", orders.size());
+                response.put("totalCount", allOrders.size());
+                response.put("truncated", result.isTruncated());
+                response.put("page", page);
+                response.put("size", size);
+                response.put("hasMore", toIndex < allOrders.size());
                 
                 // 为了保持向后兼容性，也返回第一个订单作为主订单
-                Order mainOrder = orders.get(0);
+                Order mainOrder = allOrders.get(0);
                 response.put("order", mainOrder);
                 
                 // 如果主订单已发货，返回卡密信息
@@ -197,10 +289,10 @@ public class PaymentController {
                 }
                 
                 // 检查是否有任何已发货的订单
-                boolean hasDeliveredOrder = orders.stream().anyMatch(Order::getIsDelivered);
+                boolean hasDeliveredOrder = allOrders.stream().anyMatch(Order::getIsDelivered);
                 response.put("hasDeliveredOrder", hasDeliveredOrder);
                 
-                // 返回所有已发货的卡密信息
+                // 返回本页已发货的卡密信息
                 List<Map<String, Object>> deliveredCards = new ArrayList<>();
                 for (Order order : orders) {
                     if (order.getIsDelivered() && order.getDeliveredCardCode() != null) {
@@ -227,4 +319,89 @@ public class PaymentController {
         
         return response;
     }
+    
+    /**
+     * 支付网关回调（表单参数）
+     * 只做去重和记录后立即返回，确认支付和发货在后台队列中执行
+     */
+    @PostMapping("/notify")
+    public Map<String, Object> notifyPayment(@RequestParam Map<String, String> params) {
+        return handleNotification(params.get("oid"), params.get("status"), params.toString());
+    }
+    
+    /**
+     * 支付网关回调（JSON）
+     */
+    @PostMapping(value = "/notify", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Object> notifyPaymentJson(@RequestBody Map<String, Object> body) {
+        Object oid = body.get("oid");
+        Object status = body.get("status");
+        return handleNotification(oid != null ? oid.toString() : null,
+                status != null ? status.toString() : null, body.toString());
+    }
+    
+    private Map<String, Object> handleNotification(String oid, String status, String payload) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            boolean accepted = paymentNotificationService.receive(oid, status, payload);
+            // 重复回调同样返回成功，避免网关继续重试
+            response.put("success", true);
+            response.put("duplicate", !accepted);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        
+        return response;
+    }
+    
+    private static SseEmitter errorEmitter(String message) {
+        SseEmitter emitter = new SseEmitter();
+        sendError(emitter, message);
+        return emitter;
+    }
+    
+    private static void sendError(SseEmitter emitter, String message) {
+        try {
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("error", message);
+            emitter.send(SseEmitter.event().name("error").data(error));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+    
+    private static int toInt(Object value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * 按客户端IP和查询密钥限流，超出限制时返回429并在响应中填入错误信息
+     */
+    private boolean isRateLimited(RequestRateLimiter.Limit ipLimit, RequestRateLimiter.Limit keyLimit, String queryKey,
+                                  HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                                  Map<String, Object> response) {
+        long retryAfterSeconds = requestRateLimiter.tryAcquire(ipLimit, httpRequest.getRemoteAddr());
+        if (retryAfterSeconds == 0) {
+            retryAfterSeconds = requestRateLimiter.tryAcquire(keyLimit, queryKey);
+        }
+        if (retryAfterSeconds == 0) {
+            return false;
+        }
+        httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        httpResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.put("success", false);
+        response.put("error", "请求过于频繁，请 " + retryAfterSeconds + " 秒后再试");
+        return true;
+    }
 } 
\ No newline at end of file
@@ -1,12 +1,17 @@
 package space.kuikui.service.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import space.kuikui.service.entity.Product;
+import space.kuikui.service.service.ProductListResponseCache;
 import space.kuikui.service.service.ProductService;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -17,20 +22,39 @@ public class ProductController {
     @Autowired
     private ProductService productService;
     
+    @Autowired
+    private ProductListResponseCache productListResponseCache;
+    
     /**
      * 获取所有活跃商品
+     * 直接返回按目录版本预先序列化的JSON（支持gzip），ETag未变化时返回304
      */
     @GetMapping
-    public Map<String, Object> getAllProducts() {
-        Map<String, Object> response = new HashMap<>();
+    public ResponseEntity<?> getAllProducts(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         try {
-            List<Product> products = productService.getAllActiveProducts();
-            response.put("success", true);
-            response.put("data", products);
+            ProductListResponseCache.Rendered rendered = productListResponseCache.get();
+            boolean notModified = rendered.matches(ifNoneMatch);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                    .eTag(rendered.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            
+            if (notModified) {
+                return builder.build();
+            }
+            
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                return builder.contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .body(rendered.getGzip());
+            }
+            return builder.contentType(MediaType.APPLICATION_JSON).body(rendered.getJson());
         } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
             response.put("error", e.getMessage());
+            return ResponseEntity.ok(response);
         }
-        return response;
     }
     
     /**
@@ -1,12 +1,28 @@
 package space.kuikui.service.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
-import space.kuikui.service.repository.CardCodeRepository;
-import space.kuikui.service.repository.OrderRepository;
-import space.kuikui.service.repository.ProductRepository;
-import space.kuikui.service.repository.UserRepository;
+import space.kuikui.service.config.VirtualThreadPinningMonitor;
+import space.kuikui.service.entity.SalesRollup;
+import space.kuikui.service.service.ArchiveService;
+import space.kuikui.service.service.LoginAttemptThrottle;
+import space.kuikui.service.service.OrderEventRegistry;
+import space.kuikui.service.service.PasswordVerifier;
+import space.kuikui.service.service.PaymentGatewayClient;
+import space.kuikui.service.service.PaymentNotificationService;
+import space.kuikui.service.service.ProductCatalogCache;
+import space.kuikui.service.service.QueryKeyResultCache;
+import space.kuikui.service.service.RequestRateLimiter;
+import space.kuikui.service.service.SalesRollupService;
+import space.kuikui.service.service.StatisticsService;
+import space.kuikui.service.service.UserPrincipalCache;
+import space.kuikui.service.task.OrderExpiryScheduler;
+import space.kuikui.service.task.PaymentConfirmationPoller;
+import space.kuikui.service.util.ExecutorFactory;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,16 +32,52 @@ import java.util.Map;
 public class StatisticsController {
 
     @Autowired
-    private ProductRepository productRepository;
+    private StatisticsService statisticsService;
     
     @Autowired
-    private CardCodeRepository cardCodeRepository;
+    private SalesRollupService salesRollupService;
     
     @Autowired
-    private OrderRepository orderRepository;
+    private PaymentGatewayClient paymentGatewayClient;
+
+    @Autowired
+    private PaymentConfirmationPoller paymentConfirmationPoller;
+
+    @Autowired
+    private PaymentNotificationService paymentNotificationService;
+
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
+    @Autowired
+    private PasswordVerifier passwordVerifier;
+
+    @Autowired
+    private LoginAttemptThrottle loginAttemptThrottle;
+
+    @Autowired
+    private RequestRateLimiter requestRateLimiter;
+
+    @Autowired
+    private QueryKeyResultCache queryKeyResultCache;
+
+    @Autowired
+    private OrderEventRegistry orderEventRegistry;
+
+    @Autowired
+    private OrderExpiryScheduler orderExpiryScheduler;
+
+    @Autowired
+    private ArchiveService archiveService;
     
     @Autowired
-    private UserRepository userRepository;
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired(required = false)
+    private VirtualThreadPinningMonitor pinningMonitor;
+    
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
 
     /**
      * 获取系统统计数据
@@ -35,23 +87,13 @@ public class StatisticsController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            // 统计总商品数
-            long totalProducts = productRepository.selectCount(null);
-            
-            // 统计总卡密数
-            long totalCardCodes = cardCodeRepository.selectCount(null);
-            
-            // 统计总订单数
-            long totalOrders = orderRepository.selectCount(null);
-            
-            // 统计总用户数
-            long totalUsers = userRepository.selectCount(null);
+            Map<String, Object> counters = statisticsService.getStatistics();
             
             Map<String, Object> statistics = new HashMap<>();
-            statistics.put("totalProducts", totalProducts);
-            statistics.put("totalCardCodes", totalCardCodes);
-            statistics.put("totalOrders", totalOrders);
-            statistics.put("totalUsers", totalUsers);
+            statistics.put("totalProducts", counters.get("totalProducts"));
+            statistics.put("totalCardCodes", counters.get("totalCardCodes"));
+            statistics.put("totalOrders", counters.get("totalOrders"));
+            statistics.put("totalUsers", counters.get("totalUsers"));
             
             response.put("success", true);
             response.put("data", statistics);
@@ -72,37 +114,8 @@ public class StatisticsController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            // 基础统计
-            long totalProducts = productRepository.selectCount(null);
-            long totalCardCodes = cardCodeRepository.selectCount(null);
-            long totalOrders = orderRepository.selectCount(null);
-            long totalUsers = userRepository.selectCount(null);
-            
-            // 活跃商品数
-            int activeProducts = productRepository.countByIsActiveTrue();
-            
-            // 可用卡密数（未使用）
-            int availableCardCodes = cardCodeRepository.countAllByIsUsedFalse();
-            
-            // 已使用卡密数
-            long usedCardCodes = totalCardCodes - availableCardCodes;
-            
-            // 已发货订单数
-            int deliveredOrders = orderRepository.countByIsDeliveredTrue();
-            
-            // 管理员用户数
-            int adminUsers = userRepository.countByRoleAdmin();
-            
-            Map<String, Object> statistics = new HashMap<>();
-            statistics.put("totalProducts", totalProducts);
-            statistics.put("activeProducts", activeProducts);
-            statistics.put("totalCardCodes", totalCardCodes);
-            statistics.put("availableCardCodes", availableCardCodes);
-            statistics.put("usedCardCodes", usedCardCodes);
-            statistics.put("totalOrders", totalOrders);
-            statistics.put("deliveredOrders", deliveredOrders);
-            statistics.put("totalUsers", totalUsers);
-            statistics.put("adminUsers", adminUsers);
+            // 内存中增量维护的计数器，定期与数据库对账
+            Map<String, Object> statistics = statisticsService.getStatistics();
             
             response.put("success", true);
             response.put("data", statistics);
@@ -114,4 +127,206 @@ public class StatisticsController {
         
         return response;
     }
+
+    /**
+     * 获取最近一次统计对账结果
+     */
+    @GetMapping("/reconcile")
+    public Map<String, Object> getReconcileReport() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", statisticsService.getLastReconcile());
+        return response;
+    }
+
+    /**
+     * 立即与数据库对账，返回发现的偏差
+     */
+    @PostMapping("/reconcile")
+    public Map<String, Object> reconcile() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", statisticsService.reconcile());
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 按时间粒度查询销售汇总（读取汇总表）
+     */
+    @GetMapping("/sales")
+    public Map<String, Object> getSales(
+            @RequestParam(defaultValue = "HOUR") String granularity,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime from,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime to,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) String paymentType) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            SalesRollup.BucketType bucketType = SalesRollup.BucketType.valueOf(granularity.toUpperCase());
+            response.put("success", true);
+            response.put("data", salesRollupService.getSales(bucketType, from, to, productId, paymentType));
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 回填销售汇总表（后台执行），不传时间范围时从最早的订单开始
+     */
+    @PostMapping("/sales/backfill")
+    public Map<String, Object> backfillSales(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime to) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", salesRollupService.startBackfill(from, to));
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 查询销售汇总回填进度
+     */
+    @GetMapping("/sales/backfill")
+    public Map<String, Object> getBackfillStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", salesRollupService.getBackfillStatus());
+        return response;
+    }
+
+    /**
+     * 获取支付网关客户端状态
+     */
+    @GetMapping("/payment-gateway")
+    public Map<String, Object> getPaymentGatewayStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        Map<String, Object> statistics = new HashMap<>(paymentGatewayClient.getStats());
+        statistics.put("confirmation", paymentConfirmationPoller.getStats());
+        statistics.put("notification", paymentNotificationService.getStats());
+        response.put("data", statistics);
+        return response;
+    }
+
+    /**
+     * 获取商品目录缓存命中情况
+     */
+    @GetMapping("/product-cache")
+    public Map<String, Object> getProductCacheStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", productCatalogCache.getStats());
+        return response;
+    }
+
+    /**
+     * 获取认证用户缓存命中情况
+     */
+    @GetMapping("/principal-cache")
+    public Map<String, Object> getPrincipalCacheStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", userPrincipalCache.getStats());
+        return response;
+    }
+
+    /**
+     * 获取登录密码校验耗时、排队和限流情况
+     */
+    @GetMapping("/login")
+    public Map<String, Object> getLoginStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("passwordVerify", passwordVerifier.getStats());
+        statistics.put("throttle", loginAttemptThrottle.getStats());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", statistics);
+        return response;
+    }
+
+    /**
+     * 获取公开接口限流情况
+     */
+    @GetMapping("/rate-limit")
+    public Map<String, Object> getRateLimitStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", requestRateLimiter.getStats());
+        return response;
+    }
+
+    /**
+     * 获取查询密钥结果缓存命中情况
+     */
+    @GetMapping("/query-key-cache")
+    public Map<String, Object> getQueryKeyCacheStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", queryKeyResultCache.getStats());
+        return response;
+    }
+
+    /**
+     * 获取订单发货事件订阅情况
+     */
+    @GetMapping("/order-events")
+    public Map<String, Object> getOrderEventStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", orderEventRegistry.getStats());
+        return response;
+    }
+
+    /**
+     * 获取订单过期任务状态
+     */
+    @GetMapping("/order-expiry")
+    public Map<String, Object> getOrderExpiryStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", orderExpiryScheduler.getStats());
+        return response;
+    }
+
+    /**
+     * 获取数据归档状态
+     */
+    @GetMapping("/archive")
+    public Map<String, Object> getArchiveStatistics() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", archiveService.getStats());
+        return response;
+    }
+
+    /**
+     * 获取虚拟线程运行状态（仅在启用虚拟线程模式时有钉住统计）
+     */
+    @GetMapping("/virtual-threads")
+    public Map<String, Object> getVirtualThreadStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", virtualThreadsEnabled);
+        statistics.put("supported", ExecutorFactory.isVirtualThreadSupported());
+        if (pinningMonitor != null) {
+            statistics.put("pinning", pinningMonitor.getStats());
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", statistics);
+        return response;
+    }
 } 
\ No newline at end of file
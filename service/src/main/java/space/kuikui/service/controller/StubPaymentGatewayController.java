@@ -0,0 +1,45 @@
+package space.kuikui.service.controller;
+
+import cn.hutool.core.util.IdUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地模拟支付网关（仅用于压测）
+ * 启用方式：payment.stub.enabled=true，并将 payment.api.base-url 指向 http://localhost:8080/stub/payment-gateway
+ */
+@RestController
+@RequestMapping("/stub/payment-gateway")
+@ConditionalOnProperty(name = "payment.stub.enabled", havingValue = "true")
+public class StubPaymentGatewayController {
+
+    @Value("${payment.stub.latency-ms:200}")
+    private long latencyMs;
+
+    /**
+     * 模拟下单接口，延迟返回不占用工作线程
+     */
+    @GetMapping
+    public CompletableFuture<Map<String, Object>> pay(@RequestParam(defaultValue = "pay") String way,
+                                                      @RequestParam(required = false) String value,
+                                                      @RequestParam(required = false) String product) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("way", way);
+            response.put("oid", IdUtil.simpleUUID());
+            response.put("value", value);
+            response.put("product", product);
+            return response;
+        }, CompletableFuture.delayedExecutor(latencyMs, TimeUnit.MILLISECONDS));
+    }
+}
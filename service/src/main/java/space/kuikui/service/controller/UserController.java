@@ -0,0 +1,53 @@
+package space.kuikui.service.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import space.kuikui.service.service.UserService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/users")
+@CrossOrigin(origins = "*")
+public class UserController {
+    
+    @Autowired
+    private UserService userService;
+    
+    /**
+     * 启用或禁用用户
+     */
+    @PutMapping("/{id}/active")
+    public Map<String, Object> setUserActive(@PathVariable Long id, @RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Object active = request.get("active");
+            if (active == null) {
+                throw new RuntimeException("缺少 active 参数");
+            }
+            Map<String, Object> user = userService.setUserActive(id, Boolean.parseBoolean(active.toString()));
+            response.put("success", true);
+            response.put("data", user);
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+    
+    /**
+     * 修改用户角色
+     */
+    @PutMapping("/{id}/role")
+    public Map<String, Object> changeUserRole(@PathVariable Long id, @RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Map<String, Object> user = userService.changeUserRole(id, (String) request.get("role"));
+            response.put("success", true);
+            response.put("data", user);
+        } catch (Exception e) {
+            response.put("error", e.getMessage());
+        }
+        return response;
+    }
+} 
\ No newline at end of file
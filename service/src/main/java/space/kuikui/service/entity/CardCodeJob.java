@@ -0,0 +1,199 @@
+package space.kuikui.service.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import java.time.LocalDateTime;
+
+@TableName("card_code_jobs")
+public class CardCodeJob {
+    
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    
+    @TableField("job_id")
+    private String jobId;
+    
+    @TableField("job_type")
+    private JobType jobType;
+    
+    @TableField("product_id")
+    private Long productId;
+    
+    private JobStatus status = JobStatus.QUEUED;
+    
+    // 导入任务的本地暂存文件路径
+    @TableField("source_file")
+    private String sourceFile;
+    
+    // 生成任务的卡密前缀
+    private String prefix;
+    
+    // 生成任务的目标数量（导入任务为0）
+    @TableField("total_count")
+    private Long totalCount = 0L;
+    
+    // 已提交的进度：导入任务为已处理行数，生成任务为已生成数量
+    @TableField("processed_count")
+    private Long processedCount = 0L;
+    
+    @TableField("inserted_count")
+    private Long insertedCount = 0L;
+    
+    @TableField("skipped_count")
+    private Long skippedCount = 0L;
+    
+    @TableField("error_message")
+    private String errorMessage;
+    
+    @TableField("started_at")
+    private LocalDateTime startedAt;
+    
+    @TableField("finished_at")
+    private LocalDateTime finishedAt;
+    
+    @TableField(value = "created_at", fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+    
+    @TableField(value = "updated_at", fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updatedAt;
+    
+    public enum JobType {
+        IMPORT,     // 导入卡密文件
+        GENERATE    // 生成卡密
+    }
+    
+    public enum JobStatus {
+        QUEUED,     // 排队中
+        RUNNING,    // 执行中
+        COMPLETED,  // 已完成
+        FAILED      // 失败
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getJobId() {
+        return jobId;
+    }
+    
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+    
+    public JobType getJobType() {
+        return jobType;
+    }
+    
+    public void setJobType(JobType jobType) {
+        this.jobType = jobType;
+    }
+    
+    public Long getProductId() {
+        return productId;
+    }
+    
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+    
+    public JobStatus getStatus() {
+        return status;
+    }
+    
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+    
+    public String getSourceFile() {
+        return sourceFile;
+    }
+    
+    public void setSourceFile(String sourceFile) {
+        this.sourceFile = sourceFile;
+    }
+    
+    public String getPrefix() {
+        return prefix;
+    }
+    
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+    
+    public Long getTotalCount() {
+        return totalCount;
+    }
+    
+    public void setTotalCount(Long totalCount) {
+        this.totalCount = totalCount;
+    }
+    
+    public Long getProcessedCount() {
+        return processedCount;
+    }
+    
+    public void setProcessedCount(Long processedCount) {
+        this.processedCount = processedCount;
+    }
+    
+    public Long getInsertedCount() {
+        return insertedCount;
+    }
+    
+    public void setInsertedCount(Long insertedCount) {
+        this.insertedCount = insertedCount;
+    }
+    
+    public Long getSkippedCount() {
+        return skippedCount;
+    }
+    
+    public void setSkippedCount(Long skippedCount) {
+        this.skippedCount = skippedCount;
+    }
+    
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+    
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+    
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+    
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+    
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+    
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -52,7 +52,8 @@ public class Order {
         PENDING,    // 待支付
         PAID,       // 已支付
         DELIVERED,  // 已发货
-        CANCELLED   // 已取消
+        CANCELLED,  // 已取消
+        EXPIRED     // 已过期（超时未支付，之后仍可确认支付）
     }
     
     // Getters and Setters
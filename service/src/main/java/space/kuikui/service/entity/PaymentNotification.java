@@ -0,0 +1,116 @@
+package space.kuikui.service.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import java.time.LocalDateTime;
+
+@TableName("payment_notifications")
+public class PaymentNotification {
+    
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    
+    // 支付网关订单号（即订单的 order_id），唯一
+    private String oid;
+    
+    // 回调中携带的支付状态
+    @TableField("gateway_status")
+    private String gatewayStatus;
+    
+    // 回调原始内容
+    private String payload;
+    
+    @TableField("process_status")
+    private ProcessStatus processStatus = ProcessStatus.RECEIVED;
+    
+    // 处理次数
+    private Integer attempts = 0;
+    
+    // 下次重试时间
+    @TableField("next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+    
+    @TableField("processed_at")
+    private LocalDateTime processedAt;
+    
+    @TableField(value = "created_at", fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+    
+    public enum ProcessStatus {
+        RECEIVED,   // 已接收，等待处理
+        PROCESSED,  // 已确认支付（包括之前已被确认的订单）
+        IGNORED     // 收到回调时订单尚不存在，再次收到回调时重新处理
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public String getOid() {
+        return oid;
+    }
+    
+    public void setOid(String oid) {
+        this.oid = oid;
+    }
+    
+    public String getGatewayStatus() {
+        return gatewayStatus;
+    }
+    
+    public void setGatewayStatus(String gatewayStatus) {
+        this.gatewayStatus = gatewayStatus;
+    }
+    
+    public String getPayload() {
+        return payload;
+    }
+    
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+    
+    public ProcessStatus getProcessStatus() {
+        return processStatus;
+    }
+    
+    public void setProcessStatus(ProcessStatus processStatus) {
+        this.processStatus = processStatus;
+    }
+    
+    public Integer getAttempts() {
+        return attempts;
+    }
+    
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+    
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+    
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+    
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+    
+    public void setProcessedAt(LocalDateTime processedAt) {
+        this.processedAt = processedAt;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
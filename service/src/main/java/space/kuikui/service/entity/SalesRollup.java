@@ -0,0 +1,93 @@
+package space.kuikui.service.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@TableName("sales_rollups")
+public class SalesRollup {
+    
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    
+    @TableField("bucket_type")
+    private BucketType bucketType;
+    
+    // 时间桶起点（按订单创建时间归入）
+    @TableField("bucket_start")
+    private LocalDateTime bucketStart;
+    
+    @TableField("product_id")
+    private Long productId;
+    
+    @TableField("payment_type")
+    private String paymentType;
+    
+    @TableField("order_count")
+    private Long orderCount = 0L;
+    
+    private BigDecimal revenue = BigDecimal.ZERO;
+    
+    public enum BucketType {
+        MINUTE,     // 按分钟
+        HOUR,       // 按小时
+        DAY         // 按天
+    }
+    
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public BucketType getBucketType() {
+        return bucketType;
+    }
+    
+    public void setBucketType(BucketType bucketType) {
+        this.bucketType = bucketType;
+    }
+    
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+    
+    public void setBucketStart(LocalDateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+    
+    public Long getProductId() {
+        return productId;
+    }
+    
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+    
+    public String getPaymentType() {
+        return paymentType;
+    }
+    
+    public void setPaymentType(String paymentType) {
+        this.paymentType = paymentType;
+    }
+    
+    public Long getOrderCount() {
+        return orderCount;
+    }
+    
+    public void setOrderCount(Long orderCount) {
+        this.orderCount = orderCount;
+    }
+    
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+    
+    public void setRevenue(BigDecimal revenue) {
+        this.revenue = revenue;
+    }
+}
@@ -0,0 +1,30 @@
+package space.kuikui.service.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import space.kuikui.service.entity.CardCodeJob;
+
+import java.util.List;
+
+@Mapper
+public interface CardCodeJobRepository extends BaseMapper<CardCodeJob> {
+    
+    @Select("SELECT * FROM card_code_jobs WHERE job_id = #{jobId}")
+    CardCodeJob findByJobId(String jobId);
+    
+    @Select("SELECT * FROM card_code_jobs WHERE status IN ('QUEUED', 'RUNNING') ORDER BY id ASC")
+    List<CardCodeJob> findUnfinishedJobs();
+    
+    @Select("SELECT * FROM card_code_jobs ORDER BY id DESC LIMIT #{limit}")
+    List<CardCodeJob> findRecentJobs(int limit);
+    
+    /**
+     * 记录已提交的进度检查点（与卡密写入在同一事务中执行）
+     */
+    @Update("UPDATE card_code_jobs SET processed_count = #{processed}, inserted_count = #{inserted}, skipped_count = #{skipped} WHERE id = #{id}")
+    int updateProgress(@Param("id") Long id, @Param("processed") long processed,
+                       @Param("inserted") long inserted, @Param("skipped") long skipped);
+}
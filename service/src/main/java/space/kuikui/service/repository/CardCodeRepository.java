@@ -1,11 +1,17 @@
 package space.kuikui.service.repository;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 import space.kuikui.service.entity.CardCode;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface CardCodeRepository extends BaseMapper<CardCode> {
@@ -30,4 +36,115 @@ public interface CardCodeRepository extends BaseMapper<CardCode> {
     
     @Select("SELECT COUNT(*) FROM card_codes WHERE is_used = 0")
     int countAllByIsUsedFalse();
+    
+    /**
+     * 按ID顺序预取商品的未使用卡密ID（用于卡密池补充）
+     */
+    @Select("SELECT id FROM card_codes WHERE product_id = #{productId} AND is_used = 0 AND id > #{afterId} ORDER BY id ASC LIMIT #{limit}")
+    List<Long> findUnusedIdsAfter(@Param("productId") Long productId, @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    /**
+     * 条件领取卡密：仅当卡密仍未使用时才标记为已使用，返回1表示领取成功
+     */
+    @Update("UPDATE card_codes SET is_used = 1, used_at = #{usedAt}, order_id = #{orderId} WHERE id = #{id} AND is_used = 0")
+    int claimById(@Param("id") Long id, @Param("orderId") String orderId, @Param("usedAt") LocalDateTime usedAt);
+    
+    /**
+     * 锁定商品的一批未使用卡密，MySQL下跳过已被其他事务锁定的行
+     */
+    @Select(value = "SELECT id FROM card_codes WHERE product_id = #{productId} AND is_used = 0 ORDER BY id ASC LIMIT #{limit} FOR UPDATE SKIP LOCKED", databaseId = "mysql")
+    @Select("SELECT id FROM card_codes WHERE product_id = #{productId} AND is_used = 0 ORDER BY id ASC LIMIT #{limit} FOR UPDATE")
+    List<Long> lockUnusedIds(@Param("productId") Long productId, @Param("limit") int limit);
+    
+    /**
+     * 批量条件领取卡密，assignments为 卡密ID -> 订单号
+     */
+    @Update("<script>" +
+            "UPDATE card_codes SET is_used = 1, used_at = #{usedAt}, order_id = CASE id " +
+            "<foreach collection='assignments' index='cardCodeId' item='orderId'>" +
+            "WHEN #{cardCodeId} THEN #{orderId} " +
+            "</foreach>" +
+            "END WHERE is_used = 0 AND id IN " +
+            "<foreach collection='assignments' index='cardCodeId' open='(' separator=',' close=')'>" +
+            "#{cardCodeId}" +
+            "</foreach>" +
+            "</script>")
+    int claimBatch(@Param("assignments") Map<Long, String> assignments, @Param("usedAt") LocalDateTime usedAt);
+    
+    /**
+     * 多行批量插入卡密，code唯一索引冲突的行会被忽略，返回实际插入的行数
+     */
+    @Insert(value = "<script>" +
+            "INSERT IGNORE INTO card_codes (code, product_id, is_used, created_at, updated_at) VALUES " +
+            "<foreach collection='codes' item='code' separator=','>" +
+            "(#{code}, #{productId}, 0, #{now}, #{now})" +
+            "</foreach>" +
+            "</script>", databaseId = "mysql")
+    @Insert("<script>" +
+            "INSERT INTO card_codes (code, product_id, is_used, created_at, updated_at) " +
+            "SELECT v.code, #{productId}, 0, #{now}, #{now} FROM (VALUES " +
+            "<foreach collection='codes' item='code' separator=','>" +
+            "(CAST(#{code} AS VARCHAR(255)))" +
+            "</foreach>" +
+            ") AS v(code) WHERE NOT EXISTS (SELECT 1 FROM card_codes c WHERE c.code = v.code)" +
+            "</script>")
+    int insertIgnoreBatch(@Param("productId") Long productId, @Param("codes") List<String> codes, @Param("now") LocalDateTime now);
+    
+    /**
+     * 批量查询已存在的卡密代码（包括已归档的卡密）
+     */
+    @Select("<script>" +
+            "SELECT code FROM card_codes WHERE code IN " +
+            "<foreach collection='codes' item='code' open='(' separator=',' close=')'>" +
+            "#{code}" +
+            "</foreach>" +
+            " UNION " +
+            "SELECT code FROM card_codes_archive WHERE code IN " +
+            "<foreach collection='codes' item='code' open='(' separator=',' close=')'>" +
+            "#{code}" +
+            "</foreach>" +
+            "</script>")
+    List<String> findExistingCodes(@Param("codes") List<String> codes);
+    
+    /**
+     * 按ID顺序取一批使用时间早于截止时间的卡密主键（用于归档）
+     */
+    @Select("SELECT id FROM card_codes WHERE is_used = 1 AND used_at < #{cutoffTime} AND id > #{afterId} ORDER BY id ASC LIMIT #{limit}")
+    List<Long> findArchivableIds(@Param("cutoffTime") LocalDateTime cutoffTime, @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    /**
+     * 将一批已使用的卡密复制到归档表
+     */
+    @Insert("<script>" +
+            "INSERT INTO card_codes_archive (id, code, product_id, is_used, used_at, order_id, created_at, updated_at, archived_at) " +
+            "SELECT id, code, product_id, is_used, used_at, order_id, created_at, updated_at, #{archivedAt} FROM card_codes " +
+            "WHERE is_used = 1 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int archiveByIds(@Param("ids") List<Long> ids, @Param("archivedAt") LocalDateTime archivedAt);
+    
+    /**
+     * 删除已复制到归档表的卡密
+     */
+    @Delete("<script>" +
+            "DELETE FROM card_codes WHERE is_used = 1 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int deleteArchivedByIds(@Param("ids") List<Long> ids);
+    
+    @Select("SELECT COUNT(*) FROM card_codes_archive WHERE code = #{code}")
+    int countArchivedByCode(String code);
+    
+    @Select("SELECT COUNT(*) FROM card_codes_archive WHERE product_id = #{productId}")
+    int countArchivedByProductId(Long productId);
+    
+    /**
+     * 卡密总数（含已归档），在同一条语句中统计两张表，避免两次读取之间有卡密被归档
+     */
+    @Select("SELECT (SELECT COUNT(*) FROM card_codes) + (SELECT COUNT(*) FROM card_codes_archive)")
+    long countAllIncludingArchived();
 } 
\ No newline at end of file
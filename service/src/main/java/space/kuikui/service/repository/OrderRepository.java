@@ -2,13 +2,16 @@ package space.kuikui.service.repository;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 import space.kuikui.service.entity.Order;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface OrderRepository extends BaseMapper<Order> {
@@ -28,14 +31,61 @@ public interface OrderRepository extends BaseMapper<Order> {
     @Select("SELECT * FROM orders WHERE query_key = #{queryKey} ORDER BY created_at DESC")
     List<Order> findAllByQueryKey(String queryKey);
     
+    @Select("SELECT * FROM orders WHERE query_key = #{queryKey} ORDER BY created_at DESC, id DESC LIMIT #{limit}")
+    List<Order> findRecentByQueryKey(@Param("queryKey") String queryKey, @Param("limit") int limit);
+    
     @Select("SELECT COUNT(*) FROM orders WHERE is_delivered = 1")
     int countByIsDeliveredTrue();
     
-    @Select("SELECT * FROM orders WHERE status = 'PENDING' AND created_at < #{cutoffTime}")
-    List<Order> findUnpaidOrdersBeforeTime(LocalDateTime cutoffTime);
+    /**
+     * 按 (created_at, id) 顺序取一批指定状态、创建时间早于截止时间的订单，只返回清理和过期需要的列（走 idx_status_created_at_id）
+     */
+    @Select("<script>" +
+            "SELECT id, created_at, query_key FROM orders " +
+            "WHERE status = #{status} AND created_at &lt; #{cutoffTime} " +
+            "<if test='afterCreatedAt != null'>" +
+            "AND (created_at &gt; #{afterCreatedAt} OR (created_at = #{afterCreatedAt} AND id &gt; #{afterId})) " +
+            "</if>" +
+            "ORDER BY created_at ASC, id ASC " +
+            "LIMIT #{limit}" +
+            "</script>")
+    List<Order> findUnpaidOrdersBefore(@Param("status") String status, @Param("cutoffTime") LocalDateTime cutoffTime,
+                                       @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                       @Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    /**
+     * 按主键删除一批订单，只删除仍为指定状态的（期间已支付的订单不受影响）
+     */
+    @Delete("<script>" +
+            "DELETE FROM orders WHERE status = #{status} AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int deleteByIdsAndStatus(@Param("ids") List<Long> ids, @Param("status") String status);
+    
+    /**
+     * 锁定一批订单中仍为待支付的订单（过期前确定实际会过期的订单）
+     */
+    @Select("<script>" +
+            "SELECT id, order_id, query_key FROM orders WHERE status = 'PENDING' AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            " ORDER BY id FOR UPDATE" +
+            "</script>")
+    List<Order> lockPendingByIds(@Param("ids") List<Long> ids);
     
-    @Delete("DELETE FROM orders WHERE status = 'PENDING' AND created_at < #{cutoffTime}")
-    int deleteUnpaidOrdersBeforeTime(LocalDateTime cutoffTime);
+    /**
+     * 将一批仍为待支付的订单标记为已过期
+     */
+    @Update("<script>" +
+            "UPDATE orders SET status = 'EXPIRED' WHERE status = 'PENDING' AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int markExpiredByIds(@Param("ids") List<Long> ids);
     
     /**
      * 分页查询订单列表
@@ -47,11 +97,31 @@ public interface OrderRepository extends BaseMapper<Order> {
             "AND status = #{status}" +
             "</if>" +
             "</where>" +
-            "ORDER BY created_at DESC " +
+            "ORDER BY created_at DESC, id DESC " +
             "LIMIT #{offset}, #{size}" +
             "</script>")
     List<Order> findOrdersWithPagination(@Param("status") String status, @Param("offset") int offset, @Param("size") int size);
     
+    /**
+     * 游标分页查询订单列表：返回排在 (createdAt, id) 之后的一页，首页两者传null
+     * 按 (created_at, id) 倒序，走 idx_created_at_id / idx_status_created_at_id 索引，不随页码增加扫描行数
+     */
+    @Select("<script>" +
+            "SELECT * FROM orders " +
+            "<where>" +
+            "<if test='status != null and status != \"\"'>" +
+            "AND status = #{status} " +
+            "</if>" +
+            "<if test='createdAt != null'>" +
+            "AND (created_at &lt; #{createdAt} OR (created_at = #{createdAt} AND id &lt; #{id})) " +
+            "</if>" +
+            "</where>" +
+            "ORDER BY created_at DESC, id DESC " +
+            "LIMIT #{size}" +
+            "</script>")
+    List<Order> findOrdersBeforeCursor(@Param("status") String status, @Param("createdAt") LocalDateTime createdAt,
+                                       @Param("id") Long id, @Param("size") int size);
+    
     /**
      * 统计订单总数
      */
@@ -64,4 +134,123 @@ public interface OrderRepository extends BaseMapper<Order> {
             "</where>" +
             "</script>")
     int countOrders(@Param("status") String status);
+    
+    /**
+     * 锁定单个订单行，用于发货时防止并发重复发货
+     */
+    @Select("SELECT * FROM orders WHERE id = #{id} FOR UPDATE")
+    Order lockById(Long id);
+    
+    /**
+     * 按ID顺序锁定一批已支付未发货的订单，MySQL下跳过已被其他事务锁定的行
+     */
+    @Select(value = "SELECT * FROM orders WHERE status = 'PAID' AND is_delivered = 0 AND id > #{afterId} ORDER BY id ASC LIMIT #{limit} FOR UPDATE SKIP LOCKED", databaseId = "mysql")
+    @Select("SELECT * FROM orders WHERE status = 'PAID' AND is_delivered = 0 AND id > #{afterId} ORDER BY id ASC LIMIT #{limit} FOR UPDATE")
+    List<Order> lockPaidUndeliveredOrders(@Param("afterId") long afterId, @Param("limit") int limit);
+    
+    /**
+     * 批量标记订单已发货，deliveries为 订单主键ID -> 卡密
+     */
+    @Update("<script>" +
+            "UPDATE orders SET is_delivered = 1, status = 'DELIVERED', delivered_at = #{deliveredAt}, delivered_card_code = CASE id " +
+            "<foreach collection='deliveries' index='id' item='cardCode'>" +
+            "WHEN #{id} THEN #{cardCode} " +
+            "</foreach>" +
+            "END WHERE is_delivered = 0 AND id IN " +
+            "<foreach collection='deliveries' index='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int markDeliveredBatch(@Param("deliveries") Map<Long, String> deliveries, @Param("deliveredAt") LocalDateTime deliveredAt);
+    
+    /**
+     * 条件更新为已支付：仅当订单仍为待支付或已过期（超时后才支付）时生效，返回1表示本次确认成功
+     */
+    @Update("UPDATE orders SET status = 'PAID' WHERE id = #{id} AND status IN ('PENDING', 'EXPIRED')")
+    int markPaid(Long id);
+    
+    /**
+     * 按ID顺序分批查询指定时间之后创建的待支付订单（用于订单过期任务重建）
+     */
+    @Select("SELECT id, order_id, query_key, created_at FROM orders WHERE status = 'PENDING' AND created_at >= #{since} AND id > #{afterId} ORDER BY id ASC LIMIT #{limit}")
+    List<Order> findPendingOrdersSince(@Param("since") LocalDateTime since, @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    /**
+     * 按ID顺序分批查询指定时间之后创建、尚未支付的订单，包括已过期的（用于支付确认轮询重建，超时后才支付的订单仍需确认）
+     */
+    @Select("SELECT id, order_id, query_key, created_at FROM orders WHERE status IN ('PENDING', 'EXPIRED') AND created_at >= #{since} AND id > #{afterId} ORDER BY id ASC LIMIT #{limit}")
+    List<Order> findUnpaidOrdersSince(@Param("since") LocalDateTime since, @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    /**
+     * 按ID顺序分批查询时间范围内已支付的订单，包括已归档的（用于销售汇总回填）
+     * 每个分支先各自按ID取一批再合并，每批只需读取两批数据
+     */
+    @Select("SELECT * FROM (" +
+            "(SELECT id, product_id, payment_type, amount, created_at FROM orders " +
+            "WHERE created_at >= #{from} AND created_at < #{to} AND status IN ('PAID', 'DELIVERED') AND id > #{afterId} " +
+            "ORDER BY id ASC LIMIT #{limit}) " +
+            "UNION ALL " +
+            "(SELECT id, product_id, payment_type, amount, created_at FROM orders_archive " +
+            "WHERE created_at >= #{from} AND created_at < #{to} AND id > #{afterId} " +
+            "ORDER BY id ASC LIMIT #{limit})" +
+            ") paid ORDER BY id ASC LIMIT #{limit}")
+    List<Order> findPaidOrdersCreatedBetween(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                             @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    @Select("SELECT MIN(created_at) FROM (" +
+            "SELECT MIN(created_at) AS created_at FROM orders " +
+            "UNION ALL " +
+            "SELECT MIN(created_at) AS created_at FROM orders_archive" +
+            ") earliest")
+    LocalDateTime findEarliestCreatedAt();
+    
+    /**
+     * 按ID顺序取一批发货时间早于截止时间的订单主键（用于归档）
+     */
+    @Select("SELECT id FROM orders WHERE is_delivered = 1 AND delivered_at < #{cutoffTime} AND id > #{afterId} ORDER BY id ASC LIMIT #{limit}")
+    List<Long> findArchivableIds(@Param("cutoffTime") LocalDateTime cutoffTime, @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    /**
+     * 将一批已发货的订单复制到归档表
+     */
+    @Insert("<script>" +
+            "INSERT INTO orders_archive (id, order_id, product_id, amount, payment_type, wallet_address, query_key, status, " +
+            "is_delivered, delivered_card_code, delivered_at, created_at, updated_at, archived_at) " +
+            "SELECT id, order_id, product_id, amount, payment_type, wallet_address, query_key, status, " +
+            "is_delivered, delivered_card_code, delivered_at, created_at, updated_at, #{archivedAt} FROM orders " +
+            "WHERE is_delivered = 1 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int archiveByIds(@Param("ids") List<Long> ids, @Param("archivedAt") LocalDateTime archivedAt);
+    
+    /**
+     * 删除已复制到归档表的订单
+     */
+    @Delete("<script>" +
+            "DELETE FROM orders WHERE is_delivered = 1 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>" +
+            "#{id}" +
+            "</foreach>" +
+            "</script>")
+    int deleteArchivedByIds(@Param("ids") List<Long> ids);
+    
+    @Select("SELECT * FROM orders_archive WHERE order_id = #{orderId}")
+    Order findArchivedByOrderId(String orderId);
+    
+    @Select("SELECT * FROM orders_archive WHERE query_key = #{queryKey} ORDER BY created_at DESC, id DESC LIMIT #{limit}")
+    List<Order> findRecentArchivedByQueryKey(@Param("queryKey") String queryKey, @Param("limit") int limit);
+    
+    /**
+     * 订单总数（含已归档），在同一条语句中统计两张表，避免两次读取之间有订单被归档
+     */
+    @Select("SELECT (SELECT COUNT(*) FROM orders) + (SELECT COUNT(*) FROM orders_archive)")
+    long countAllIncludingArchived();
+    
+    /**
+     * 已发货订单数（归档的订单都是已发货的）
+     */
+    @Select("SELECT (SELECT COUNT(*) FROM orders WHERE is_delivered = 1) + (SELECT COUNT(*) FROM orders_archive)")
+    long countDeliveredIncludingArchived();
 } 
\ No newline at end of file
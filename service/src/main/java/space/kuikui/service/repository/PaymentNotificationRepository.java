@@ -0,0 +1,47 @@
+package space.kuikui.service.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import space.kuikui.service.entity.PaymentNotification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface PaymentNotificationRepository extends BaseMapper<PaymentNotification> {
+    
+    @Select("SELECT * FROM payment_notifications WHERE oid = #{oid}")
+    PaymentNotification findByOid(String oid);
+    
+    /**
+     * 查询接收后一直未处理完成、且已到重试时间的回调（处理队列已满、网关尚未确认支付或服务重启时遗留）
+     */
+    @Select("SELECT * FROM payment_notifications WHERE process_status = 'RECEIVED' AND created_at < #{before} " +
+            "AND (next_attempt_at IS NULL OR next_attempt_at <= #{now}) " +
+            "AND attempts < #{maxAttempts} ORDER BY id ASC LIMIT #{limit}")
+    List<PaymentNotification> findPendingNotifications(@Param("before") LocalDateTime before,
+                                                       @Param("now") LocalDateTime now,
+                                                       @Param("maxAttempts") int maxAttempts,
+                                                       @Param("limit") int limit);
+    
+    @Update("UPDATE payment_notifications SET attempts = attempts + 1 WHERE oid = #{oid}")
+    int incrementAttempts(String oid);
+    
+    @Update("UPDATE payment_notifications SET next_attempt_at = #{nextAttemptAt} WHERE oid = #{oid} AND process_status = 'RECEIVED'")
+    int scheduleRetry(@Param("oid") String oid, @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+    
+    /**
+     * 重新打开因订单尚不存在而被忽略的回调，返回1表示需要重新处理
+     */
+    @Update("UPDATE payment_notifications SET process_status = 'RECEIVED', attempts = 0, next_attempt_at = NULL, " +
+            "gateway_status = #{gatewayStatus}, processed_at = NULL " +
+            "WHERE oid = #{oid} AND process_status = 'IGNORED'")
+    int reopen(@Param("oid") String oid, @Param("gatewayStatus") String gatewayStatus);
+    
+    @Update("UPDATE payment_notifications SET process_status = #{status}, processed_at = #{processedAt} WHERE oid = #{oid}")
+    int markProcessed(@Param("oid") String oid, @Param("status") String status,
+                      @Param("processedAt") LocalDateTime processedAt);
+}
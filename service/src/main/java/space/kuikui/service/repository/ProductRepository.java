@@ -2,7 +2,9 @@ package space.kuikui.service.repository;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 import space.kuikui.service.entity.Product;
 
 import java.util.List;
@@ -21,4 +23,31 @@ public interface ProductRepository extends BaseMapper<Product> {
     
     @Select("SELECT COUNT(*) FROM products WHERE is_active = 1")
     int countByIsActiveTrue();
+    
+    @Select("SELECT id FROM products")
+    List<Long> findAllIds();
+    
+    /**
+     * 原子调整剩余卡密数量和销量（导入、生成、删除卡密时）
+     */
+    @Update("UPDATE products SET card_count = card_count + #{cardDelta}, sold_count = sold_count + #{soldDelta} WHERE id = #{id}")
+    int adjustCounts(@Param("id") Long id, @Param("cardDelta") long cardDelta, @Param("soldDelta") long soldDelta);
+    
+    /**
+     * 原子记录售出：剩余卡密数量减少，销量增加
+     */
+    @Update("UPDATE products SET card_count = card_count - #{count}, sold_count = sold_count + #{count} WHERE id = #{id}")
+    int recordSold(@Param("id") Long id, @Param("count") int count);
+    
+    /**
+     * 锁定商品行（对账时与增量更新串行）
+     */
+    @Select("SELECT * FROM products WHERE id = #{id} FOR UPDATE")
+    Product lockById(Long id);
+    
+    /**
+     * 对账修正剩余卡密数量和销量
+     */
+    @Update("UPDATE products SET card_count = #{cardCount}, sold_count = #{soldCount} WHERE id = #{id}")
+    int updateCounts(@Param("id") Long id, @Param("cardCount") int cardCount, @Param("soldCount") int soldCount);
 } 
\ No newline at end of file
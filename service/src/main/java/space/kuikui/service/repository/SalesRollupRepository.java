@@ -0,0 +1,61 @@
+package space.kuikui.service.repository;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import space.kuikui.service.entity.SalesRollup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface SalesRollupRepository extends BaseMapper<SalesRollup> {
+    
+    /**
+     * 批量累加汇总行，不存在时插入（同一批中的时间桶不能重复）
+     */
+    @Insert(value = "<script>" +
+            "INSERT INTO sales_rollups (bucket_type, bucket_start, product_id, payment_type, order_count, revenue) VALUES " +
+            "<foreach collection='rollups' item='r' separator=','>" +
+            "(#{r.bucketType}, #{r.bucketStart}, #{r.productId}, #{r.paymentType}, #{r.orderCount}, #{r.revenue})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), revenue = revenue + VALUES(revenue)" +
+            "</script>", databaseId = "mysql")
+    @Insert("<script>" +
+            "MERGE INTO sales_rollups t USING (VALUES " +
+            "<foreach collection='rollups' item='r' separator=','>" +
+            "(CAST(#{r.bucketType} AS VARCHAR(10)), CAST(#{r.bucketStart} AS TIMESTAMP), CAST(#{r.productId} AS BIGINT), " +
+            "CAST(#{r.paymentType} AS VARCHAR(50)), CAST(#{r.orderCount} AS BIGINT), CAST(#{r.revenue} AS DECIMAL(18, 2)))" +
+            "</foreach>" +
+            ") AS s(bucket_type, bucket_start, product_id, payment_type, order_count, revenue) " +
+            "ON t.bucket_type = s.bucket_type AND t.bucket_start = s.bucket_start AND t.product_id = s.product_id AND t.payment_type = s.payment_type " +
+            "WHEN MATCHED THEN UPDATE SET order_count = t.order_count + s.order_count, revenue = t.revenue + s.revenue " +
+            "WHEN NOT MATCHED THEN INSERT (bucket_type, bucket_start, product_id, payment_type, order_count, revenue) " +
+            "VALUES (s.bucket_type, s.bucket_start, s.product_id, s.payment_type, s.order_count, s.revenue)" +
+            "</script>")
+    int upsertIncrements(@Param("rollups") List<SalesRollup> rollups);
+    
+    /**
+     * 按时间范围查询汇总行
+     */
+    @Select("<script>" +
+            "SELECT * FROM sales_rollups WHERE bucket_type = #{bucketType} " +
+            "AND bucket_start &gt;= #{from} AND bucket_start &lt; #{to} " +
+            "<if test='productId != null'>AND product_id = #{productId} </if>" +
+            "<if test='paymentType != null and paymentType != \"\"'>AND payment_type = #{paymentType} </if>" +
+            "ORDER BY bucket_start ASC, product_id ASC" +
+            "</script>")
+    List<SalesRollup> findRange(@Param("bucketType") String bucketType, @Param("from") LocalDateTime from,
+                                @Param("to") LocalDateTime to, @Param("productId") Long productId,
+                                @Param("paymentType") String paymentType);
+    
+    /**
+     * 删除某一粒度在时间范围内的汇总行（回填前清空），条件与 uk_bucket 索引的前缀一致，只扫描并锁定该范围
+     */
+    @Delete("DELETE FROM sales_rollups WHERE bucket_type = #{bucketType} AND bucket_start >= #{from} AND bucket_start < #{to}")
+    int deleteRange(@Param("bucketType") String bucketType, @Param("from") LocalDateTime from,
+                    @Param("to") LocalDateTime to);
+}
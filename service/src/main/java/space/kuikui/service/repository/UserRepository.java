@@ -7,6 +7,7 @@ import org.apache.ibatis.annotations.Update;
 import space.kuikui.service.entity.User;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface UserRepository extends BaseMapper<User> {
@@ -28,4 +29,10 @@ public interface UserRepository extends BaseMapper<User> {
     
     @Select("SELECT COUNT(*) FROM users WHERE role = 'ADMIN'")
     int countByRoleAdmin();
+    
+    /**
+     * 按ID顺序锁定所有启用的管理员行，用于禁用或降级管理员时保证至少保留一个管理员
+     */
+    @Select("SELECT id FROM users WHERE role = 'ADMIN' AND is_active = 1 ORDER BY id ASC FOR UPDATE")
+    List<Long> lockActiveAdminIds();
 } 
\ No newline at end of file
@@ -0,0 +1,177 @@
+package space.kuikui.service.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.kuikui.service.repository.CardCodeRepository;
+import space.kuikui.service.repository.OrderRepository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 数据归档
+ * 将发货时间超过 archive.order-days 天的订单、使用时间超过 archive.card-code-days 天的卡密
+ * 分批移动到 orders_archive / card_codes_archive，让订单表和卡密表只保留近期的数据。
+ * 每批复制和删除在同一个短事务中提交；按订单号和查询密钥查询时会回退到归档表。
+ */
+@Service
+public class ArchiveService {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private CardCodeRepository cardCodeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${archive.order-days:90}")
+    private int orderDays;
+
+    @Value("${archive.card-code-days:90}")
+    private int cardCodeDays;
+
+    @Value("${archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${archive.pause-ms:100}")
+    private long pauseMs;
+
+    @Value("${archive.time-budget-ms:600000}")
+    private long timeBudgetMs;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final LongAdder archivedOrders = new LongAdder();
+
+    private final LongAdder archivedCardCodes = new LongAdder();
+
+    private volatile Map<String, Object> lastReport;
+
+    /**
+     * 执行一次归档，超出时间预算后剩余的数据留到下次
+     * @return 本次归档报告
+     */
+    public Map<String, Object> archive() {
+        if (!running.compareAndSet(false, true)) {
+            throw new RuntimeException("已有归档任务正在执行");
+        }
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeBudgetMs;
+        Map<String, Object> report = new HashMap<>();
+        report.put("startedAt", LocalDateTime.now());
+        try {
+            LocalDateTime orderCutoff = LocalDateTime.now().minusDays(orderDays);
+            long orders = archiveOrders(orderCutoff, deadline);
+            report.put("archivedOrders", orders);
+
+            LocalDateTime cardCodeCutoff = LocalDateTime.now().minusDays(cardCodeDays);
+            long cardCodes = archiveCardCodes(cardCodeCutoff, deadline);
+            report.put("archivedCardCodes", cardCodes);
+
+            report.put("status", "COMPLETED");
+            report.put("timeBudgetExceeded", System.currentTimeMillis() >= deadline);
+        } catch (Exception e) {
+            System.err.println("数据归档失败: " + e.getMessage());
+            report.put("status", "FAILED");
+            report.put("error", String.valueOf(e.getMessage()));
+        } finally {
+            report.put("elapsedMs", System.currentTimeMillis() - startTime);
+            lastReport = report;
+            running.set(false);
+        }
+        return report;
+    }
+
+    /**
+     * 归档状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", running.get());
+        stats.put("orderDays", orderDays);
+        stats.put("cardCodeDays", cardCodeDays);
+        stats.put("archivedOrders", archivedOrders.sum());
+        stats.put("archivedCardCodes", archivedCardCodes.sum());
+        stats.put("lastReport", lastReport);
+        return stats;
+    }
+
+    private long archiveOrders(LocalDateTime cutoffTime, long deadline) {
+        long total = 0;
+        long lastId = 0;
+        List<Long> ids;
+        do {
+            ids = orderRepository.findArchivableIds(cutoffTime, lastId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+            List<Long> batch = ids;
+            Integer moved = transactionTemplate.execute(status -> {
+                LocalDateTime archivedAt = LocalDateTime.now();
+                int inserted = orderRepository.archiveByIds(batch, archivedAt);
+                int deleted = orderRepository.deleteArchivedByIds(batch);
+                if (inserted != deleted) {
+                    throw new RuntimeException("订单归档行数不一致: 复制 " + inserted + " 行，删除 " + deleted + " 行");
+                }
+                return deleted;
+            });
+            total += moved;
+            archivedOrders.add(moved);
+        } while (ids.size() == batchSize && pause(deadline));
+        return total;
+    }
+
+    private long archiveCardCodes(LocalDateTime cutoffTime, long deadline) {
+        long total = 0;
+        long lastId = 0;
+        List<Long> ids;
+        do {
+            ids = cardCodeRepository.findArchivableIds(cutoffTime, lastId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+            List<Long> batch = ids;
+            Integer moved = transactionTemplate.execute(status -> {
+                LocalDateTime archivedAt = LocalDateTime.now();
+                int inserted = cardCodeRepository.archiveByIds(batch, archivedAt);
+                int deleted = cardCodeRepository.deleteArchivedByIds(batch);
+                if (inserted != deleted) {
+                    throw new RuntimeException("卡密归档行数不一致: 复制 " + inserted + " 行，删除 " + deleted + " 行");
+                }
+                return deleted;
+            });
+            total += moved;
+            archivedCardCodes.add(moved);
+        } while (ids.size() == batchSize && pause(deadline));
+        return total;
+    }
+
+    /**
+     * 批次之间暂停，让出行锁和IO给在线请求
+     * @return 是否还在时间预算内
+     */
+    private boolean pause(long deadline) {
+        if (System.currentTimeMillis() >= deadline) {
+            return false;
+        }
+        if (pauseMs > 0) {
+            try {
+                Thread.sleep(pauseMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,292 @@
+package space.kuikui.service.service;
+
+import cn.hutool.core.util.IdUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import space.kuikui.service.entity.CardCodeJob;
+import space.kuikui.service.repository.CardCodeJobRepository;
+import space.kuikui.service.repository.ProductRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 卡密导入/生成异步任务
+ * 任务在有界线程池中执行，每块卡密与任务进度在同一事务中提交，
+ * 服务重启后未完成的任务会从最后一个已提交的块继续执行。
+ */
+@Service
+public class CardCodeJobService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private CardCodeJobRepository jobRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CardCodeService cardCodeService;
+
+    @Value("${cardcode.job.threads:1}")
+    private int threads;
+
+    @Value("${cardcode.job.queue-capacity:10}")
+    private int queueCapacity;
+
+    @Value("${cardcode.job.spool-dir:./data/import-jobs}")
+    private String spoolDir;
+
+    @Value("${cardcode.generate.max-count:1000000}")
+    private int maxGenerateCount;
+
+    private ThreadPoolExecutor executor;
+
+    // 当前运行中的任务：jobId -> [本次开始时间, 本次开始时的已处理数量]，用于计算速率
+    private final ConcurrentHashMap<String, long[]> runningJobs = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 线程数和队列都有上限，避免导入任务占满数据库连接影响下单
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "cardcode-job-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交导入任务，上传文件先暂存到本地磁盘以便断点续传
+     */
+    public CardCodeJob submitImportJob(Long productId, MultipartFile file) throws IOException {
+        checkProduct(productId);
+
+        String jobId = IdUtil.simpleUUID();
+        Path directory = Paths.get(spoolDir);
+        Files.createDirectories(directory);
+        Path sourceFile = directory.resolve(jobId + ".txt").toAbsolutePath();
+        file.transferTo(sourceFile);
+
+        CardCodeJob job = new CardCodeJob();
+        job.setJobId(jobId);
+        job.setJobType(CardCodeJob.JobType.IMPORT);
+        job.setProductId(productId);
+        job.setSourceFile(sourceFile.toString());
+        jobRepository.insert(job);
+
+        submit(job);
+        return job;
+    }
+
+    /**
+     * 提交生成任务
+     */
+    public CardCodeJob submitGenerateJob(Long productId, int count, String prefix) {
+        checkProduct(productId);
+        if (count <= 0 || count > maxGenerateCount) {
+            throw new RuntimeException("生成数量必须在 1 到 " + maxGenerateCount + " 之间");
+        }
+
+        CardCodeJob job = new CardCodeJob();
+        job.setJobId(IdUtil.simpleUUID());
+        job.setJobType(CardCodeJob.JobType.GENERATE);
+        job.setProductId(productId);
+        job.setPrefix(prefix);
+        job.setTotalCount((long) count);
+        jobRepository.insert(job);
+
+        submit(job);
+        return job;
+    }
+
+    /**
+     * 重新执行失败的任务，从最后一个已提交的块继续
+     */
+    public CardCodeJob resumeJob(String jobId) {
+        CardCodeJob job = jobRepository.findByJobId(jobId);
+        if (job == null) {
+            throw new RuntimeException("任务不存在");
+        }
+        if (job.getStatus() != CardCodeJob.JobStatus.FAILED) {
+            throw new RuntimeException("只有失败的任务可以继续执行");
+        }
+
+        job.setStatus(CardCodeJob.JobStatus.QUEUED);
+        job.setErrorMessage(null);
+        jobRepository.updateById(job);
+
+        submit(job);
+        return job;
+    }
+
+    /**
+     * 查询任务进度
+     */
+    public Map<String, Object> getJobProgress(String jobId) {
+        CardCodeJob job = jobRepository.findByJobId(jobId);
+        if (job == null) {
+            throw new RuntimeException("任务不存在");
+        }
+        return toProgress(job);
+    }
+
+    /**
+     * 最近的任务列表
+     */
+    public List<Map<String, Object>> getRecentJobs(int limit) {
+        return jobRepository.findRecentJobs(limit).stream().map(this::toProgress).toList();
+    }
+
+    /**
+     * 启动时继续执行上次未完成的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        for (CardCodeJob job : jobRepository.findUnfinishedJobs()) {
+            try {
+                System.out.println("继续执行未完成的卡密任务: " + job.getJobId() + "，已处理 " + job.getProcessedCount());
+                executor.execute(() -> runJob(job.getJobId()));
+            } catch (RejectedExecutionException e) {
+                System.err.println("任务队列已满，无法继续执行任务: " + job.getJobId());
+            }
+        }
+    }
+
+    private void submit(CardCodeJob job) {
+        try {
+            executor.execute(() -> runJob(job.getJobId()));
+        } catch (RejectedExecutionException e) {
+            markFailed(job.getJobId(), "任务队列已满，请稍后再试");
+            throw new RuntimeException("任务队列已满，请稍后再试");
+        }
+    }
+
+    private void runJob(String jobId) {
+        CardCodeJob job = jobRepository.findByJobId(jobId);
+        if (job == null || job.getStatus() == CardCodeJob.JobStatus.COMPLETED) {
+            return;
+        }
+
+        job.setStatus(CardCodeJob.JobStatus.RUNNING);
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(LocalDateTime.now());
+        }
+        jobRepository.updateById(job);
+        runningJobs.put(jobId, new long[] { System.currentTimeMillis(), job.getProcessedCount() });
+
+        try {
+            if (job.getJobType() == CardCodeJob.JobType.IMPORT) {
+                runImport(job);
+            } else {
+                runGenerate(job);
+            }
+
+            job.setStatus(CardCodeJob.JobStatus.COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.updateById(job);
+        } catch (Exception e) {
+            System.err.println("卡密任务执行失败: " + jobId + "，" + e.getMessage());
+            markFailed(jobId, e.getMessage());
+        } finally {
+            runningJobs.remove(jobId);
+        }
+    }
+
+    private void runImport(CardCodeJob job) throws IOException {
+        Path sourceFile = Paths.get(job.getSourceFile());
+        CardCodeService.ImportReport report = new CardCodeService.ImportReport(
+                job.getProcessedCount(), job.getInsertedCount(), job.getSkippedCount());
+
+        try (InputStream inputStream = Files.newInputStream(sourceFile)) {
+            cardCodeService.importCardCodes(job.getProductId(), inputStream, report,
+                    progress -> jobRepository.updateProgress(job.getId(), progress.getLineCount(),
+                            progress.getInsertedCount(), progress.getSkippedCount()));
+        }
+
+        job.setProcessedCount(report.getLineCount());
+        job.setInsertedCount(report.getInsertedCount());
+        job.setSkippedCount(report.getSkippedCount());
+        Files.deleteIfExists(sourceFile);
+    }
+
+    private void runGenerate(CardCodeJob job) {
+        Map<String, Object> result = cardCodeService.generateCardCodes(job.getProductId(),
+                job.getTotalCount().intValue(), job.getPrefix(), job.getProcessedCount().intValue(),
+                generated -> jobRepository.updateProgress(job.getId(), generated, generated, 0));
+
+        long generatedCount = ((Number) result.get("generatedCount")).longValue();
+        job.setProcessedCount(generatedCount);
+        job.setInsertedCount(generatedCount);
+    }
+
+    private void markFailed(String jobId, String message) {
+        // 重新读取，避免覆盖已提交的进度
+        CardCodeJob job = jobRepository.findByJobId(jobId);
+        if (job != null) {
+            job.setStatus(CardCodeJob.JobStatus.FAILED);
+            job.setErrorMessage(message != null && message.length() > MAX_ERROR_LENGTH
+                    ? message.substring(0, MAX_ERROR_LENGTH) : message);
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.updateById(job);
+        }
+    }
+
+    private void checkProduct(Long productId) {
+        if (productRepository.selectById(productId) == null) {
+            throw new RuntimeException("商品不存在");
+        }
+    }
+
+    private Map<String, Object> toProgress(CardCodeJob job) {
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("jobId", job.getJobId());
+        progress.put("jobType", job.getJobType());
+        progress.put("productId", job.getProductId());
+        progress.put("status", job.getStatus());
+        progress.put("totalCount", job.getTotalCount());
+        progress.put("processedCount", job.getProcessedCount());
+        progress.put("insertedCount", job.getInsertedCount());
+        progress.put("skippedCount", job.getSkippedCount());
+        progress.put("errorMessage", job.getErrorMessage());
+        progress.put("createdAt", job.getCreatedAt());
+        progress.put("startedAt", job.getStartedAt());
+        progress.put("finishedAt", job.getFinishedAt());
+
+        // 速率按本次运行计算（每秒处理数量）
+        long[] run = runningJobs.get(job.getJobId());
+        if (run != null) {
+            long elapsedMs = Math.max(System.currentTimeMillis() - run[0], 1);
+            progress.put("ratePerSecond", (job.getProcessedCount() - run[1]) * 1000 / elapsedMs);
+        }
+        return progress;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 不中断正在执行的任务：未提交的块会回滚，任务保持RUNNING状态并在下次启动时继续
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,165 @@
+package space.kuikui.service.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.entity.CardCode;
+import space.kuikui.service.repository.CardCodeRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 卡密发放池
+ * 为每个商品预取一批未使用的卡密ID，发货时从池中取出ID并通过条件更新原子领取。
+ * 池中只保存候选ID，是否领取成功始终以数据库的 is_used 条件更新为准，
+ * 因此并发发货或服务重启后都不会重复发放同一张卡密。
+ */
+@Component
+public class CardCodePool {
+
+    @Autowired
+    private CardCodeRepository cardCodeRepository;
+
+    @Value("${cardcode.pool.batch-size:200}")
+    private int batchSize;
+
+    @Value("${cardcode.pool.low-watermark:50}")
+    private int lowWatermark;
+
+    @Value("${cardcode.pool.max-claim-attempts:20}")
+    private int maxClaimAttempts;
+
+    private final ConcurrentHashMap<Long, ProductPool> pools = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor refillExecutor = new ThreadPoolExecutor(
+            1, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(64), runnable -> {
+                Thread thread = new Thread(runnable, "cardcode-pool-refill");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    /**
+     * 为订单领取一张卡密，没有可用卡密时返回null
+     */
+    public CardCode claim(Long productId, String orderId) {
+        ProductPool pool = pools.computeIfAbsent(productId, ProductPool::new);
+
+        for (int attempt = 0; attempt < maxClaimAttempts; attempt++) {
+            Long id = pool.ids.poll();
+            if (id == null) {
+                // 池已空，同步补充一次；仍然没有则说明商品已无库存
+                if (refill(pool) == 0) {
+                    return null;
+                }
+                continue;
+            }
+            pool.size.decrementAndGet();
+
+            if (pool.size.get() < lowWatermark) {
+                scheduleRefill(pool);
+            }
+
+            if (cardCodeRepository.claimById(id, orderId, LocalDateTime.now()) == 1) {
+                return cardCodeRepository.selectById(id);
+            }
+            // 该卡密已被其他途径领取或删除，继续尝试下一个
+        }
+
+        return null;
+    }
+
+    /**
+     * 丢弃商品的预取ID，下次领取时从头重新加载
+     */
+    public void invalidate(Long productId) {
+        pools.remove(productId);
+    }
+
+    /**
+     * 当前池中预取的卡密ID数量
+     */
+    public int getPooledCount(Long productId) {
+        ProductPool pool = pools.get(productId);
+        return pool != null ? pool.size.get() : 0;
+    }
+
+    private void scheduleRefill(ProductPool pool) {
+        if (pool.refillScheduled.compareAndSet(false, true)) {
+            refillExecutor.execute(() -> {
+                try {
+                    refill(pool);
+                } catch (Exception e) {
+                    System.err.println("卡密池补充失败: productId=" + pool.productId + ", " + e.getMessage());
+                } finally {
+                    pool.refillScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 从数据库补充一批卡密ID，返回本次补充的数量
+     */
+    private int refill(ProductPool pool) {
+        pool.lock.lock();
+        try {
+            if (pool.size.get() >= lowWatermark) {
+                return pool.size.get();
+            }
+
+            List<Long> ids = cardCodeRepository.findUnusedIdsAfter(pool.productId, pool.cursor, batchSize);
+            if (ids.isEmpty() && pool.cursor > 0 && pool.ids.isEmpty()) {
+                // 游标之前可能还有晚提交的卡密或回滚释放的卡密，从头扫描一次
+                pool.cursor = 0;
+                ids = cardCodeRepository.findUnusedIdsAfter(pool.productId, 0, batchSize);
+            }
+
+            if (!ids.isEmpty()) {
+                pool.ids.addAll(ids);
+                pool.size.addAndGet(ids.size());
+                pool.cursor = ids.get(ids.size() - 1);
+            }
+            return ids.size();
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    /**
+     * 单个商品的预取池
+     */
+    private static class ProductPool {
+
+        private final Long productId;
+
+        private final ConcurrentLinkedQueue<Long> ids = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // 已预取到的最大卡密ID，仅在持有lock时读写
+        private long cursor;
+
+        ProductPool(Long productId) {
+            this.productId = productId;
+        }
+    }
+}
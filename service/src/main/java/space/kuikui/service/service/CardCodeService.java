@@ -2,16 +2,32 @@ package space.kuikui.service.service;
 
 import cn.hutool.core.util.RandomUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import space.kuikui.service.entity.CardCode;
 import space.kuikui.service.entity.Product;
 import space.kuikui.service.repository.CardCodeRepository;
 import space.kuikui.service.repository.ProductRepository;
+import space.kuikui.service.util.LongHashSet;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 @Service
 public class CardCodeService {
@@ -22,31 +38,104 @@ public class CardCodeService {
     @Autowired
     private ProductRepository productRepository;
     
+    @Autowired
+    private CardCodePool cardCodePool;
+    
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+    
+    @Autowired
+    private StatisticsService statisticsService;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Value("${cardcode.batch.chunk-size:1000}")
+    private int chunkSize;
+    
+    @Value("${cardcode.batch.max-collision-retries:5}")
+    private int maxCollisionRetries;
+    
+    @Value("${cardcode.generate.max-count:1000000}")
+    private int maxGenerateCount;
+    
     /**
-     * 为商品生成卡密
+     * 为商品批量生成卡密
+     * 卡密在内存中生成并去重，按块多行插入并分块提交，唯一索引冲突的少量卡密会重新生成补齐
+     * @return 生成结果统计（数量、耗时、吞吐量）
      */
-    @Transactional
-    public List<CardCode> generateCardCodes(Long productId, int count, String prefix) {
+    public Map<String, Object> generateCardCodes(Long productId, int count, String prefix) {
+        return generateCardCodes(productId, count, prefix, 0, null);
+    }
+    
+    /**
+     * 从已生成的数量处继续生成卡密（用于任务断点续传）
+     * @param checkpoint 每块在其事务内以累计生成数量回调，可为null
+     */
+    public Map<String, Object> generateCardCodes(Long productId, int count, String prefix,
+                                                 int alreadyGenerated, IntConsumer checkpoint) {
         Product product = productRepository.selectById(productId);
         if (product == null) {
             throw new RuntimeException("商品不存在");
         }
         
-        List<CardCode> cardCodes = new ArrayList<>();
+        if (count <= 0 || count > maxGenerateCount) {
+            throw new RuntimeException("生成数量必须在 1 到 " + maxGenerateCount + " 之间");
+        }
         
-        for (int i = 0; i < count; i++) {
-            CardCode cardCode = new CardCode();
-            cardCode.setCode(generateUniqueCode(prefix));
-            cardCode.setProductId(productId);
-            cardCodeRepository.insert(cardCode);
-            cardCodes.add(cardCode);
+        long startTime = System.currentTimeMillis();
+        int generatedCount = alreadyGenerated;
+        int collisionCount = 0;
+        
+        while (generatedCount < count) {
+            int chunk = Math.min(chunkSize, count - generatedCount);
+            int[] chunkResult = insertGeneratedChunk(productId, chunk, prefix, generatedCount, checkpoint);
+            generatedCount += chunkResult[0];
+            collisionCount += chunkResult[1];
+            
+            if (chunkResult[0] < chunk) {
+                // 多次重试后仍有冲突，通常说明前缀下的卡密空间已接近耗尽
+                break;
+            }
         }
         
-        // 更新商品的卡密数量
-        product.setCardCount(cardCodeRepository.countByProductIdAndIsUsedFalse(productId));
-        productRepository.updateById(product);
+        long elapsedMs = Math.max(System.currentTimeMillis() - startTime, 1);
         
-        return cardCodes;
+        Map<String, Object> result = new HashMap<>();
+        result.put("productId", productId);
+        result.put("requestedCount", count);
+        result.put("generatedCount", generatedCount);
+        result.put("collisionCount", collisionCount);
+        result.put("elapsedMs", elapsedMs);
+        result.put("codesPerSecond", (generatedCount - alreadyGenerated) * 1000L / elapsedMs);
+        return result;
+    }
+    
+    /**
+     * 生成并插入一块卡密，在独立事务中提交
+     * @return [实际插入数量, 冲突重试数量]
+     */
+    private int[] insertGeneratedChunk(Long productId, int size, String prefix,
+                                       int generatedBefore, IntConsumer checkpoint) {
+        return transactionTemplate.execute(status -> {
+            int inserted = 0;
+            int collisions = 0;
+            LocalDateTime now = LocalDateTime.now();
+            
+            for (int attempt = 0; attempt <= maxCollisionRetries && inserted < size; attempt++) {
+                List<String> codes = generateCodes(size - inserted, prefix);
+                int batchInserted = cardCodeRepository.insertIgnoreBatch(productId, codes, now);
+                collisions += codes.size() - batchInserted;
+                inserted += batchInserted;
+            }
+            
+            applyCardCodeDelta(productId, inserted, inserted);
+            if (checkpoint != null) {
+                checkpoint.accept(generatedBefore + inserted);
+            }
+            
+            return new int[] { inserted, collisions };
+        });
     }
     
     /**
@@ -87,8 +176,8 @@ public class CardCodeService {
                 continue;
             }
             
-            // 检查卡密是否已存在
-            if (cardCodeRepository.findByCode(code) != null) {
+            // 检查卡密是否已存在（包括已归档的卡密）
+            if (cardCodeRepository.findByCode(code) != null || cardCodeRepository.countArchivedByCode(code) > 0) {
                 skippedCodes.add(code + " (已存在)");
                 continue;
             }
@@ -106,8 +195,7 @@ public class CardCodeService {
         }
         
         // 更新商品的卡密数量
-        product.setCardCount(cardCodeRepository.countByProductIdAndIsUsedFalse(productId));
-        productRepository.updateById(product);
+        applyCardCodeDelta(productId, successCount, successCount);
         
         // 构建结果消息
         StringBuilder message = new StringBuilder();
@@ -134,21 +222,141 @@ public class CardCodeService {
     }
     
     /**
-     * 获取一个可用的卡密（用于发货）
+     * 流式导入卡密文件
+     * 逐行读取，文件内按64位哈希去重，每块批量查重、多行插入并单独提交，内存占用与文件大小无关
+     * @return 导入报告（总数、各类跳过原因及每块进度）
+     */
+    public Map<String, Object> importCardCodes(Long productId, InputStream inputStream) throws IOException {
+        long startTime = System.currentTimeMillis();
+        ImportReport report = importCardCodes(productId, inputStream, new ImportReport(), null);
+        
+        Map<String, Object> result = report.toMap();
+        result.put("productId", productId);
+        result.put("elapsedMs", System.currentTimeMillis() - startTime);
+        return result;
+    }
+    
+    /**
+     * 流式导入卡密文件，支持从报告中记录的已提交行数处继续（用于任务断点续传）
+     * 已提交的行只重新计算去重哈希，不会再次写入数据库
+     * @param checkpoint 每块在其事务内以最新报告回调，可为null
+     */
+    public ImportReport importCardCodes(Long productId, InputStream inputStream, ImportReport report,
+                                        Consumer<ImportReport> checkpoint) throws IOException {
+        Product product = productRepository.selectById(productId);
+        if (product == null) {
+            throw new RuntimeException("商品不存在");
+        }
+        
+        long resumeFromLine = report.lineCount;
+        report.lineCount = 0;
+        LongHashSet seenCodes = new LongHashSet(chunkSize);
+        List<String> buffer = new ArrayList<>(chunkSize);
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            report.lineCount++;
+            if (report.lineCount == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            
+            String code = line.trim();
+            
+            // 跳过空行
+            if (code.isEmpty()) {
+                continue;
+            }
+            
+            boolean replay = report.lineCount <= resumeFromLine;
+            
+            // 验证卡密长度
+            if (code.length() < 3) {
+                if (!replay) {
+                    report.skip(code, "长度太短");
+                    report.tooShortCount++;
+                }
+                continue;
+            }
+            
+            // 验证卡密长度上限
+            if (code.length() > 50) {
+                if (!replay) {
+                    report.skip(code, "长度超过50个字符");
+                    report.tooLongCount++;
+                }
+                continue;
+            }
+            
+            // 文件内去重
+            if (!seenCodes.add(LongHashSet.hash(code))) {
+                if (!replay) {
+                    report.skip(code, "文件内重复");
+                    report.duplicateInFileCount++;
+                }
+                continue;
+            }
+            
+            if (replay) {
+                continue;
+            }
+            
+            buffer.add(code);
+            if (buffer.size() >= chunkSize) {
+                importChunk(productId, buffer, report, checkpoint);
+                buffer.clear();
+            }
+        }
+        
+        if (!buffer.isEmpty()) {
+            importChunk(productId, buffer, report, checkpoint);
+        }
+        
+        return report;
+    }
+    
+    /**
+     * 导入一块卡密：批量IN查重后多行插入，与检查点一起在独立事务中提交
+     */
+    private void importChunk(Long productId, List<String> codes, ImportReport report,
+                             Consumer<ImportReport> checkpoint) {
+        List<String> existingCodes = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<String> existing = new HashSet<>(cardCodeRepository.findExistingCodes(codes));
+            List<String> freshCodes = new ArrayList<>(codes.size());
+            for (String code : codes) {
+                if (existing.contains(code)) {
+                    existingCodes.add(code);
+                } else {
+                    freshCodes.add(code);
+                }
+            }
+            int inserted = freshCodes.isEmpty() ? 0 : cardCodeRepository.insertIgnoreBatch(productId, freshCodes, LocalDateTime.now());
+            
+            // 查重与插入之间被并发写入（或仅大小写不同）的卡密由唯一索引忽略，同样计为已存在
+            report.recordChunk(codes.size(), inserted);
+            applyCardCodeDelta(productId, inserted, inserted);
+            if (checkpoint != null) {
+                checkpoint.accept(report);
+            }
+        });
+        
+        for (String code : existingCodes) {
+            report.skip(code, "已存在");
+        }
+    }
+    
+    /**
+     * 为订单领取一个可用的卡密（用于发货）
+     * 通过卡密池原子领取，领取成功的卡密已标记为已使用并关联订单
      */
     @Transactional
-    public CardCode getAvailableCardCode(Product product) {
-        CardCode cardCode = cardCodeRepository.findFirstByProductIdAndIsUsedFalseOrderByCreatedAtAsc(product.getId());
+    public CardCode claimCardCode(Product product, String orderId) {
+        CardCode cardCode = cardCodePool.claim(product.getId(), orderId);
         
         if (cardCode != null) {
-            cardCode.setIsUsed(true);
-            cardCode.setUsedAt(LocalDateTime.now());
-            cardCodeRepository.updateById(cardCode);
-            
             // 更新商品统计
-            product.setCardCount(cardCodeRepository.countByProductIdAndIsUsedFalse(product.getId()));
-            product.setSoldCount(product.getSoldCount() + 1);
-            productRepository.updateById(product);
+            recordSold(product.getId(), 1);
             
             return cardCode;
         }
@@ -156,6 +364,68 @@ public class CardCodeService {
         return null;
     }
     
+    /**
+     * 为一批订单批量领取卡密
+     * 先锁定一批未使用的卡密（MySQL下跳过被锁定的行），再条件更新为已使用
+     * @return 订单号 -> 领取到的卡密，库存不足时只包含部分订单
+     */
+    @Transactional
+    public Map<String, CardCode> claimCardCodes(Product product, List<String> orderIds) {
+        Map<String, CardCode> claimed = new HashMap<>();
+        if (orderIds == null || orderIds.isEmpty()) {
+            return claimed;
+        }
+        
+        List<Long> ids = cardCodeRepository.lockUnusedIds(product.getId(), orderIds.size());
+        if (ids.isEmpty()) {
+            return claimed;
+        }
+        
+        Map<Long, String> assignments = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            assignments.put(ids.get(i), orderIds.get(i));
+        }
+        cardCodeRepository.claimBatch(assignments, LocalDateTime.now());
+        
+        // 只返回确实由本次领取的卡密
+        for (CardCode cardCode : cardCodeRepository.selectBatchIds(ids)) {
+            String orderId = assignments.get(cardCode.getId());
+            if (Boolean.TRUE.equals(cardCode.getIsUsed()) && orderId != null && orderId.equals(cardCode.getOrderId())) {
+                claimed.put(orderId, cardCode);
+            }
+        }
+        
+        if (!claimed.isEmpty()) {
+            // 更新商品统计
+            recordSold(product.getId(), claimed.size());
+        }
+        
+        return claimed;
+    }
+    
+    /**
+     * 卡密售出：原子地减少商品剩余数量并增加销量
+     */
+    private void recordSold(Long productId, int soldCount) {
+        productRepository.recordSold(productId, soldCount);
+        productCatalogCache.applyCountDelta(productId, -soldCount, soldCount);
+        statisticsService.adjust(StatisticsService.Counter.AVAILABLE_CARD_CODES, -soldCount);
+    }
+    
+    /**
+     * 卡密增减后原子地调整商品剩余数量和销量，并更新卡密统计（统计在事务提交后生效）
+     * 销量即该商品已使用的卡密数（含已归档的），删除已使用的卡密时同时减少销量，与对账的口径一致
+     */
+    private void applyCardCodeDelta(Long productId, long total, long available) {
+        long sold = total - available;
+        if (available != 0 || sold != 0) {
+            productRepository.adjustCounts(productId, available, sold);
+            productCatalogCache.applyCountDelta(productId, available, sold);
+        }
+        statisticsService.adjust(StatisticsService.Counter.TOTAL_CARD_CODES, total);
+        statisticsService.adjust(StatisticsService.Counter.AVAILABLE_CARD_CODES, available);
+    }
+    
     /**
      * 标记卡密为已使用（与订单关联）
      */
@@ -187,19 +457,18 @@ public class CardCodeService {
     }
     
     /**
-     * 生成唯一的卡密代码
+     * 在内存中生成一批互不重复的卡密代码
      */
-    private String generateUniqueCode(String prefix) {
-        String code;
-        do {
+    private List<String> generateCodes(int size, String prefix) {
+        Set<String> codes = new LinkedHashSet<>(size * 2);
+        while (codes.size() < size) {
             if (prefix != null && !prefix.isEmpty()) {
-                code = prefix + "-" + RandomUtil.randomString(16).toUpperCase();
+                codes.add(prefix + "-" + RandomUtil.randomString(16).toUpperCase());
             } else {
-                code = RandomUtil.randomString(20).toUpperCase();
+                codes.add(RandomUtil.randomString(20).toUpperCase());
             }
-        } while (cardCodeRepository.findByCode(code) != null);
-        
-        return code;
+        }
+        return new ArrayList<>(codes);
     }
     
     /**
@@ -211,14 +480,96 @@ public class CardCodeService {
         if (cardCode != null) {
             Long productId = cardCode.getProductId();
             
-            cardCodeRepository.deleteById(cardCodeId);
-            
-            // 更新商品的卡密数量
-            Product product = productRepository.selectById(productId);
-            if (product != null) {
-                product.setCardCount(cardCodeRepository.countByProductIdAndIsUsedFalse(productId));
-                productRepository.updateById(product);
+            // 删除成功才调整，避免并发删除同一卡密时重复扣减
+            if (cardCodeRepository.deleteById(cardCodeId) == 1) {
+                applyCardCodeDelta(productId, -1, Boolean.TRUE.equals(cardCode.getIsUsed()) ? 0 : -1);
+            }
+        }
+    }
+    
+    /**
+     * 流式导入报告
+     */
+    public static class ImportReport {
+        
+        private static final int MAX_SKIPPED_SAMPLES = 10;
+        
+        private long lineCount;
+        
+        private long insertedCount;
+        
+        private long tooShortCount;
+        
+        private long tooLongCount;
+        
+        private long duplicateInFileCount;
+        
+        private long existingCount;
+        
+        // 断点续传前已提交的跳过数量（无法细分原因）
+        private long resumedSkippedCount;
+        
+        private final List<String> skippedSamples = new ArrayList<>();
+        
+        private final List<Map<String, Object>> chunks = new ArrayList<>();
+        
+        public ImportReport() {
+        }
+        
+        /**
+         * 从已提交的检查点恢复报告
+         */
+        public ImportReport(long committedLines, long insertedCount, long skippedCount) {
+            this.lineCount = committedLines;
+            this.insertedCount = insertedCount;
+            this.resumedSkippedCount = skippedCount;
+        }
+        
+        void skip(String code, String reason) {
+            if (skippedSamples.size() < MAX_SKIPPED_SAMPLES) {
+                skippedSamples.add(code + " (" + reason + ")");
             }
         }
+        
+        void recordChunk(int codeCount, int inserted) {
+            insertedCount += inserted;
+            existingCount += codeCount - inserted;
+            
+            Map<String, Object> chunk = new HashMap<>();
+            chunk.put("chunk", chunks.size() + 1);
+            chunk.put("linesRead", lineCount);
+            chunk.put("inserted", inserted);
+            chunk.put("skipped", codeCount - inserted);
+            chunks.add(chunk);
+        }
+        
+        public long getLineCount() {
+            return lineCount;
+        }
+        
+        public long getInsertedCount() {
+            return insertedCount;
+        }
+        
+        public long getSkippedCount() {
+            return resumedSkippedCount + tooShortCount + tooLongCount + duplicateInFileCount + existingCount;
+        }
+        
+        Map<String, Object> toMap() {
+            Map<String, Object> skipped = new HashMap<>();
+            skipped.put("tooShort", tooShortCount);
+            skipped.put("tooLong", tooLongCount);
+            skipped.put("duplicateInFile", duplicateInFileCount);
+            skipped.put("existing", existingCount);
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("lineCount", lineCount);
+            result.put("insertedCount", insertedCount);
+            result.put("skippedCount", getSkippedCount());
+            result.put("skipped", skipped);
+            result.put("skippedSamples", skippedSamples);
+            result.put("chunks", chunks);
+            return result;
+        }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,171 @@
+package space.kuikui.service.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录尝试限制（内存中，按固定时间窗口计数）
+ * 同一用户名在同一IP下窗口内失败次数过多、或同一IP在窗口内尝试次数过多时，直接拒绝登录，不再校验密码。
+ * 失败锁定按（用户名, IP）计数，其他IP上的攻击者无法借此锁住该用户；IP限制更宽松，只限制单个IP的尝试频率。
+ * 记录数有上限，超过上限时先清理过期记录，仍然超出则淘汰最久未访问的记录。
+ */
+@Component
+public class LoginAttemptThrottle {
+
+    @Value("${auth.login.username-max-failures:5}")
+    private int usernameMaxFailures;
+
+    @Value("${auth.login.username-window-seconds:900}")
+    private long usernameWindowSeconds;
+
+    @Value("${auth.login.ip-max-attempts:30}")
+    private int ipMaxAttempts;
+
+    @Value("${auth.login.ip-window-seconds:60}")
+    private long ipWindowSeconds;
+
+    @Value("${auth.login.throttle-max-keys:100000}")
+    private int maxKeys;
+
+    private Limiter accountFailures;
+
+    private Limiter ipAttempts;
+
+    private final LongAdder blockedCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        accountFailures = new Limiter(usernameMaxFailures, usernameWindowSeconds * 1000, maxKeys);
+        ipAttempts = new Limiter(ipMaxAttempts, ipWindowSeconds * 1000, maxKeys);
+    }
+
+    /**
+     * 登录前检查并记录一次尝试
+     * @return 需要等待的秒数，0 表示允许登录
+     */
+    public long tryAcquire(String username, String clientIp) {
+        long now = System.currentTimeMillis();
+        long waitMs = Math.max(accountFailures.blockedFor(accountKey(username, clientIp), now), ipAttempts.blockedFor(clientIp, now));
+        if (waitMs > 0) {
+            blockedCount.increment();
+            return (waitMs + 999) / 1000;
+        }
+        ipAttempts.increment(clientIp, now);
+        return 0;
+    }
+
+    /**
+     * 记录一次密码错误
+     */
+    public void recordFailure(String username, String clientIp) {
+        accountFailures.increment(accountKey(username, clientIp), System.currentTimeMillis());
+    }
+
+    /**
+     * 登录成功后清除该用户名在该IP下的失败记录
+     */
+    public void recordSuccess(String username, String clientIp) {
+        accountFailures.reset(accountKey(username, clientIp));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("blockedCount", blockedCount.sum());
+        stats.put("trackedAccounts", accountFailures.size());
+        stats.put("trackedIps", ipAttempts.size());
+        return stats;
+    }
+
+    private static String accountKey(String username, String clientIp) {
+        return username == null ? null : username + "|" + clientIp;
+    }
+
+    /**
+     * 按访问顺序排列的计数窗口，所有操作在同一把锁内完成
+     */
+    private static class Limiter {
+
+        private final int maxCount;
+
+        private final long windowMs;
+
+        private final int maxKeys;
+
+        private final LinkedHashMap<String, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+
+        Limiter(int maxCount, long windowMs, int maxKeys) {
+            this.maxCount = maxCount;
+            this.windowMs = windowMs;
+            this.maxKeys = maxKeys;
+        }
+
+        synchronized long blockedFor(String key, long now) {
+            if (key == null) {
+                return 0;
+            }
+            Window window = windows.get(key);
+            if (window == null || now - window.startedAt >= windowMs) {
+                return 0;
+            }
+            return window.count >= maxCount ? window.startedAt + windowMs - now : 0;
+        }
+
+        synchronized void increment(String key, long now) {
+            if (key == null) {
+                return;
+            }
+            Window window = windows.get(key);
+            if (window == null) {
+                if (windows.size() >= maxKeys) {
+                    evict(now);
+                }
+                window = new Window(now);
+                windows.put(key, window);
+            } else if (now - window.startedAt >= windowMs) {
+                window.startedAt = now;
+                window.count = 0;
+            }
+            window.count++;
+        }
+
+        synchronized void reset(String key) {
+            if (key != null) {
+                windows.remove(key);
+            }
+        }
+
+        synchronized int size() {
+            return windows.size();
+        }
+
+        /**
+         * 先清理过期记录，仍然已满时淘汰最久未访问的记录
+         */
+        private void evict(long now) {
+            windows.values().removeIf(existing -> now - existing.startedAt >= windowMs);
+            Iterator<Window> eldest = windows.values().iterator();
+            while (windows.size() >= maxKeys && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static class Window {
+
+        private long startedAt;
+
+        private int count;
+
+        Window(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package space.kuikui.service.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import space.kuikui.service.entity.Order;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单发货事件订阅
+ * 前端通过SSE等待订单发货，等待期间请求挂起在Servlet异步上下文中，不占用工作线程。
+ * 订单发货或过期的事务提交后向该订单的所有订阅者推送一次事件并结束连接。
+ */
+@Component
+public class OrderEventRegistry {
+
+    public static final String EVENT_DELIVERED = "delivered";
+
+    public static final String EVENT_EXPIRED = "expired";
+
+    @Value("${order.events.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Value("${order.events.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${order.events.max-subscribers-per-order:5}")
+    private int maxSubscribersPerOrder;
+
+    private final ConcurrentHashMap<String, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final LongAdder publishedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * 订阅订单发货事件，超时后连接结束，客户端可重新订阅
+     */
+    public SseEmitter subscribe(String orderId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            rejectedCount.increment();
+            throw new RuntimeException("订阅连接数已达上限");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Set<SseEmitter> orderSubscribers = subscribers.compute(orderId, (key, existing) -> {
+            Set<SseEmitter> set = existing != null ? existing : new CopyOnWriteArraySet<>();
+            if (set.size() < maxSubscribersPerOrder) {
+                set.add(emitter);
+            }
+            return set;
+        });
+        if (!orderSubscribers.contains(emitter)) {
+            subscriberCount.decrementAndGet();
+            rejectedCount.increment();
+            throw new RuntimeException("该订单的订阅连接过多");
+        }
+
+        Runnable remove = () -> unsubscribe(orderId, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(() -> {
+            remove.run();
+            emitter.complete();
+        });
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    /**
+     * 订单已发货，当前有事务时在提交后推送
+     */
+    public void publishDelivered(Order order) {
+        publishAfterCommit(order.getOrderId(), EVENT_DELIVERED, toPayload(order));
+    }
+
+    /**
+     * 订单已过期，当前有事务时在提交后推送（订单不会再自动发货，结束等待）
+     */
+    public void publishExpired(Order order) {
+        publishAfterCommit(order.getOrderId(), EVENT_EXPIRED, toPayload(order));
+    }
+
+    /**
+     * 直接向一个订阅者推送发货事件并结束连接（订阅时订单已经发货）
+     */
+    public void sendDelivered(SseEmitter emitter, Order order) {
+        send(emitter, EVENT_DELIVERED, toPayload(order));
+    }
+
+    /**
+     * 直接向一个订阅者推送过期事件并结束连接（订阅时订单已经过期）
+     */
+    public void sendExpired(SseEmitter emitter, Order order) {
+        send(emitter, EVENT_EXPIRED, toPayload(order));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("subscribers", subscriberCount.get());
+        stats.put("subscribedOrders", subscribers.size());
+        stats.put("publishedCount", publishedCount.sum());
+        stats.put("rejectedCount", rejectedCount.sum());
+        stats.put("maxSubscribers", maxSubscribers);
+        return stats;
+    }
+
+    private void publishAfterCommit(String orderId, String eventName, Map<String, Object> payload) {
+        if (orderId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(orderId, eventName, payload);
+                }
+            });
+        } else {
+            publish(orderId, eventName, payload);
+        }
+    }
+
+    private void publish(String orderId, String eventName, Map<String, Object> payload) {
+        Set<SseEmitter> orderSubscribers = subscribers.remove(orderId);
+        if (orderSubscribers == null) {
+            return;
+        }
+        for (SseEmitter emitter : orderSubscribers) {
+            subscriberCount.decrementAndGet();
+            send(emitter, eventName, payload);
+        }
+        publishedCount.increment();
+    }
+
+    private void send(SseEmitter emitter, String eventName, Map<String, Object> payload) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(payload));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void unsubscribe(String orderId, SseEmitter emitter) {
+        subscribers.computeIfPresent(orderId, (key, set) -> {
+            if (set.remove(emitter)) {
+                subscriberCount.decrementAndGet();
+            }
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static Map<String, Object> toPayload(Order order) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("orderId", order.getOrderId());
+        payload.put("status", order.getStatus());
+        payload.put("isDelivered", order.getIsDelivered());
+        payload.put("cardCode", order.getDeliveredCardCode());
+        payload.put("deliveredAt", order.getDeliveredAt());
+        return payload;
+    }
+}
@@ -2,17 +2,27 @@ package space.kuikui.service.service;
 
 import cn.hutool.core.util.IdUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import space.kuikui.service.entity.CardCode;
 import space.kuikui.service.entity.Order;
 import space.kuikui.service.entity.Product;
 import space.kuikui.service.repository.OrderRepository;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class OrderService {
@@ -26,6 +36,44 @@ public class OrderService {
     @Autowired
     private ProductService productService;
     
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @Autowired
+    private StatisticsService statisticsService;
+    
+    @Autowired
+    private SalesRollupService salesRollupService;
+    
+    @Autowired
+    private QueryKeyResultCache queryKeyResultCache;
+    
+    @Autowired
+    private OrderEventRegistry orderEventRegistry;
+    
+    @Value("${order.delivery.batch-size:100}")
+    private int deliveryBatchSize;
+    
+    @Value("${order.list.count-cache-seconds:30}")
+    private long countCacheSeconds;
+    
+    @Value("${order.query-key.max-orders:100}")
+    private int queryKeyMaxOrders;
+    
+    @Value("${order.cleanup.chunk-size:500}")
+    private int cleanupChunkSize;
+    
+    @Value("${order.cleanup.pause-ms:100}")
+    private long cleanupPauseMs;
+    
+    @Value("${order.cleanup.time-budget-ms:60000}")
+    private long cleanupTimeBudgetMs;
+    
+    // 订单状态 -> [订单总数, 统计时间]，游标分页时返回的近似总数
+    private final ConcurrentHashMap<String, long[]> orderCounts = new ConcurrentHashMap<>();
+    
+    private volatile Map<String, Object> lastCleanupReport;
+    
     /**
      * 创建订单
      */
@@ -34,14 +82,20 @@ public class OrderService {
         // 生成订单ID
         order.setOrderId(IdUtil.simpleUUID());
         orderRepository.insert(order);
+        statisticsService.adjust(StatisticsService.Counter.TOTAL_ORDERS, 1);
+        queryKeyResultCache.invalidate(order.getQueryKey());
         return order;
     }
     
     /**
-     * 根据订单ID获取订单
+     * 根据订单ID获取订单，不在订单表中时查询归档表
      */
     public Order getOrderByOrderId(String orderId) {
-        return orderRepository.findByOrderId(orderId);
+        Order order = orderRepository.findByOrderId(orderId);
+        if (order == null) {
+            order = orderRepository.findArchivedByOrderId(orderId);
+        }
+        return order;
     }
     
     /**
@@ -52,10 +106,28 @@ public class OrderService {
     }
     
     /**
-     * 根据查询密钥查询所有相关订单
+     * 根据查询密钥查询最近的订单（最多 order.query-key.max-orders 条，已加载商品信息）
+     * 订单表中不足上限时用归档表中的订单补足；结果按查询密钥缓存，订单变化时失效
      */
-    public List<Order> getAllOrdersByQueryKey(String queryKey) {
-        return orderRepository.findAllByQueryKey(queryKey);
+    public QueryKeyResultCache.Result getRecentOrdersByQueryKey(String queryKey) {
+        return queryKeyResultCache.get(queryKey, key -> {
+            List<Order> orders = orderRepository.findRecentByQueryKey(key, queryKeyMaxOrders + 1);
+            if (orders.size() <= queryKeyMaxOrders) {
+                List<Order> archived = orderRepository.findRecentArchivedByQueryKey(key, queryKeyMaxOrders + 1 - orders.size());
+                if (!archived.isEmpty()) {
+                    orders = new ArrayList<>(orders);
+                    orders.addAll(archived);
+                    orders.sort(Comparator.comparing(Order::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+                            .thenComparing(Order::getId, Comparator.reverseOrder()));
+                }
+            }
+            boolean truncated = orders.size() > queryKeyMaxOrders;
+            if (truncated) {
+                orders = new ArrayList<>(orders.subList(0, queryKeyMaxOrders));
+            }
+            attachProducts(orders);
+            return new QueryKeyResultCache.Result(orders, truncated);
+        });
     }
     
     /**
@@ -65,6 +137,11 @@ public class OrderService {
     public Order updateOrderStatus(String orderId, Order.OrderStatus status) {
         Order order = orderRepository.findByOrderId(orderId);
         if (order != null) {
+            // 从待支付（或已过期）变为已支付/已发货时计入销售汇总
+            if ((order.getStatus() == Order.OrderStatus.PENDING || order.getStatus() == Order.OrderStatus.EXPIRED)
+                    && (status == Order.OrderStatus.PAID || status == Order.OrderStatus.DELIVERED)) {
+                salesRollupService.recordPaidOrder(order);
+            }
             order.setStatus(status);
             
             // 如果订单状态变为已支付，尝试自动发货
@@ -73,11 +150,31 @@ public class OrderService {
             }
             
             orderRepository.updateById(order);
+            queryKeyResultCache.invalidate(order.getQueryKey());
             return order;
         }
         throw new RuntimeException("订单不存在");
     }
     
+    /**
+     * 确认订单已支付并尝试发货
+     * 通过条件更新保证同一订单只会被确认一次，重复确认直接返回false
+     */
+    @Transactional
+    public boolean confirmPayment(String orderId) {
+        Order order = orderRepository.findByOrderId(orderId);
+        if (order == null || orderRepository.markPaid(order.getId()) == 0) {
+            return false;
+        }
+        
+        order.setStatus(Order.OrderStatus.PAID);
+        salesRollupService.recordPaidOrder(order);
+        queryKeyResultCache.invalidate(order.getQueryKey());
+        // 没有库存时订单保持已支付状态，补货后由批量发货处理
+        deliverOrder(order);
+        return true;
+    }
+    
     /**
      * 自动发货
      */
@@ -87,13 +184,25 @@ public class OrderService {
             return true; // 已经发货
         }
         
+        // 锁定订单行，防止并发发货为同一订单领取多张卡密
+        if (order.getId() != null) {
+            Order locked = orderRepository.lockById(order.getId());
+            if (locked == null) {
+                return false;
+            }
+            if (locked.getIsDelivered()) {
+                order.setIsDelivered(true);
+                order.setDeliveredCardCode(locked.getDeliveredCardCode());
+                order.setDeliveredAt(locked.getDeliveredAt());
+                order.setStatus(locked.getStatus());
+                return true;
+            }
+        }
+        
         Product product = productService.getProductById(order.getProductId());
-        CardCode cardCode = cardCodeService.getAvailableCardCode(product);
+        CardCode cardCode = cardCodeService.claimCardCode(product, order.getOrderId());
         
         if (cardCode != null) {
-            // 标记卡密为已使用
-            cardCodeService.markCardCodeAsUsed(cardCode, order.getOrderId());
-            
             // 更新订单状态
             order.setIsDelivered(true);
             order.setDeliveredCardCode(cardCode.getCode());
@@ -101,12 +210,67 @@ public class OrderService {
             order.setStatus(Order.OrderStatus.DELIVERED);
             
             orderRepository.updateById(order);
+            statisticsService.adjust(StatisticsService.Counter.DELIVERED_ORDERS, 1);
+            queryKeyResultCache.invalidate(order.getQueryKey());
+            orderEventRegistry.publishDelivered(order);
             return true;
         }
         
         return false; // 没有可用卡密
     }
     
+    /**
+     * 批量发货：按商品分组，每个商品一次性领取所需卡密，再一次性更新订单
+     * 调用方需已锁定这些订单行
+     * @return 成功发货的订单数量
+     */
+    @Transactional
+    public int deliverOrders(List<Order> orders) {
+        Map<Long, List<Order>> ordersByProduct = new LinkedHashMap<>();
+        for (Order order : orders) {
+            if (!order.getIsDelivered()) {
+                ordersByProduct.computeIfAbsent(order.getProductId(), k -> new ArrayList<>()).add(order);
+            }
+        }
+        
+        LocalDateTime deliveredAt = LocalDateTime.now();
+        Map<Long, String> deliveries = new LinkedHashMap<>();
+        Map<Long, Product> products = productService.getProductsByIds(ordersByProduct.keySet());
+        
+        for (Map.Entry<Long, List<Order>> entry : ordersByProduct.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null) {
+                continue;
+            }
+            
+            List<String> orderIds = new ArrayList<>();
+            for (Order order : entry.getValue()) {
+                orderIds.add(order.getOrderId());
+            }
+            
+            Map<String, CardCode> claimed = cardCodeService.claimCardCodes(product, orderIds);
+            for (Order order : entry.getValue()) {
+                CardCode cardCode = claimed.get(order.getOrderId());
+                if (cardCode != null) {
+                    order.setIsDelivered(true);
+                    order.setDeliveredCardCode(cardCode.getCode());
+                    order.setDeliveredAt(deliveredAt);
+                    order.setStatus(Order.OrderStatus.DELIVERED);
+                    deliveries.put(order.getId(), cardCode.getCode());
+                    queryKeyResultCache.invalidate(order.getQueryKey());
+                    orderEventRegistry.publishDelivered(order);
+                }
+            }
+        }
+        
+        if (!deliveries.isEmpty()) {
+            orderRepository.markDeliveredBatch(deliveries, deliveredAt);
+            statisticsService.adjust(StatisticsService.Counter.DELIVERED_ORDERS, deliveries.size());
+        }
+        
+        return deliveries.size();
+    }
+    
     /**
      * 获取所有未发货的订单
      */
@@ -123,42 +287,95 @@ public class OrderService {
     
     /**
      * 批量处理已支付但未发货的订单
+     * 每轮在独立事务中锁定一批订单并批量发货，多个实例可以并发执行
+     * @return 成功发货的订单数量
      */
-    @Transactional
-    public void processUndeliveredOrders() {
-        List<Order> paidOrders = orderRepository.findByStatus(Order.OrderStatus.PAID.name());
-        for (Order order : paidOrders) {
-            if (!order.getIsDelivered()) {
-                deliverOrder(order);
+    public int processUndeliveredOrders() {
+        int deliveredCount = 0;
+        long lastId = 0;
+        
+        while (true) {
+            final long afterId = lastId;
+            long[] batchResult = transactionTemplate.execute(status -> {
+                List<Order> batch = orderRepository.lockPaidUndeliveredOrders(afterId, deliveryBatchSize);
+                if (batch.isEmpty()) {
+                    return null;
+                }
+                int delivered = deliverOrders(batch);
+                return new long[] { batch.get(batch.size() - 1).getId(), delivered };
+            });
+            
+            if (batchResult == null) {
+                break;
             }
+            lastId = batchResult[0];
+            deliveredCount += (int) batchResult[1];
         }
+        
+        return deliveredCount;
     }
     
     /**
-     * 清理过期的未付款订单
+     * 清理过期的未付款订单（已过期和仍为待支付的）
+     * 按 (created_at, id) 顺序分批删除，每批一个短事务，批次之间暂停，超过单次时间预算后停止（剩余的下次继续）
      * @param hours 超过多少小时的未付款订单将被删除，默认24小时
      * @return 删除的订单数量
      */
-    @Transactional
     public int cleanupUnpaidOrders(int hours) {
         LocalDateTime cutoffTime = LocalDateTime.now().minusHours(hours);
+        long startTime = System.currentTimeMillis();
+        int deletedCount = 0;
+        int chunks = 0;
+        boolean budgetExhausted = false;
         
-        // 先查询要删除的订单（用于日志）
-        List<Order> unpaidOrders = orderRepository.findUnpaidOrdersBeforeTime(cutoffTime);
-        
-        // 执行删除
-        int deletedCount = orderRepository.deleteUnpaidOrdersBeforeTime(cutoffTime);
-        
-        // 记录日志
-        if (deletedCount > 0) {
-            System.out.println(String.format("定时清理: 删除了 %d 个超过 %d 小时的未付款订单", deletedCount, hours));
-            for (Order order : unpaidOrders) {
-                System.out.println(String.format("删除订单: ID=%s, 创建时间=%s", order.getOrderId(), order.getCreatedAt()));
+        // 每种状态单独扫描，保证按索引顺序读取
+        statuses:
+        for (Order.OrderStatus unpaidStatus : new Order.OrderStatus[] { Order.OrderStatus.EXPIRED, Order.OrderStatus.PENDING }) {
+            LocalDateTime afterCreatedAt = null;
+            Long afterId = null;
+            
+            while (true) {
+                List<Order> chunk = orderRepository.findUnpaidOrdersBefore(unpaidStatus.name(), cutoffTime,
+                        afterCreatedAt, afterId, cleanupChunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                Order last = chunk.get(chunk.size() - 1);
+                afterCreatedAt = last.getCreatedAt();
+                afterId = last.getId();
+                
+                deletedCount += transactionTemplate.execute(status -> deleteUnpaidChunk(chunk, unpaidStatus));
+                chunks++;
+                
+                if (chunk.size() < cleanupChunkSize) {
+                    break;
+                }
+                if (System.currentTimeMillis() - startTime >= cleanupTimeBudgetMs) {
+                    budgetExhausted = true;
+                    break statuses;
+                }
+                if (cleanupPauseMs > 0) {
+                    try {
+                        Thread.sleep(cleanupPauseMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break statuses;
+                    }
+                }
             }
-        } else {
-            System.out.println("定时清理: 没有找到需要删除的未付款订单");
         }
         
+        Map<String, Object> report = new HashMap<>();
+        report.put("finishedAt", LocalDateTime.now());
+        report.put("hours", hours);
+        report.put("deletedCount", deletedCount);
+        report.put("chunks", chunks);
+        report.put("elapsedMs", System.currentTimeMillis() - startTime);
+        report.put("budgetExhausted", budgetExhausted);
+        lastCleanupReport = report;
+        
+        System.out.println(String.format("清理未付款订单: 删除 %d 个超过 %d 小时的订单，%d 批，耗时 %d ms%s",
+                deletedCount, hours, chunks, report.get("elapsedMs"), budgetExhausted ? "，已达时间预算，剩余的下次继续" : ""));
         return deletedCount;
     }
     
@@ -166,11 +383,68 @@ public class OrderService {
      * 清理过期的未付款订单（默认24小时）
      * @return 删除的订单数量
      */
-    @Transactional
     public int cleanupUnpaidOrders() {
         return cleanupUnpaidOrders(24);
     }
     
+    /**
+     * 最近一次清理的统计
+     */
+    public Map<String, Object> getLastCleanupReport() {
+        return lastCleanupReport;
+    }
+    
+    /**
+     * 将一批超时未支付的订单标记为已过期（仍为待支付的才会更新）
+     * 先锁定仍为待支付的订单，提交后向这些订单的订阅者推送过期事件
+     * @return 实际过期的订单数量
+     */
+    @Transactional
+    public int expireOrders(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return 0;
+        }
+        List<Order> pending = orderRepository.lockPendingByIds(primaryKeys(orders));
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int expired = orderRepository.markExpiredByIds(primaryKeys(pending));
+        if (expired > 0) {
+            invalidateQueryKeys(pending);
+            for (Order order : pending) {
+                order.setStatus(Order.OrderStatus.EXPIRED);
+                orderEventRegistry.publishExpired(order);
+            }
+        }
+        return expired;
+    }
+    
+    private int deleteUnpaidChunk(List<Order> chunk, Order.OrderStatus status) {
+        int deleted = orderRepository.deleteByIdsAndStatus(primaryKeys(chunk), status.name());
+        if (deleted > 0) {
+            statisticsService.adjust(StatisticsService.Counter.TOTAL_ORDERS, -deleted);
+            invalidateQueryKeys(chunk);
+        }
+        return deleted;
+    }
+    
+    private static List<Long> primaryKeys(List<Order> orders) {
+        List<Long> ids = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+    
+    private void invalidateQueryKeys(List<Order> orders) {
+        Set<String> queryKeys = new HashSet<>();
+        for (Order order : orders) {
+            if (order.getQueryKey() != null && queryKeys.add(order.getQueryKey())) {
+                queryKeyResultCache.invalidate(order.getQueryKey());
+            }
+        }
+    }
+    
     /**
      * 分页获取订单列表
      */
@@ -183,13 +457,8 @@ public class OrderService {
         // 查询订单列表
         List<Order> orders = orderRepository.findOrdersWithPagination(status, offset, size);
         
-        // 为每个订单加载商品信息
-        for (Order order : orders) {
-            if (order.getProductId() != null) {
-                Product product = productService.getProductById(order.getProductId());
-                order.setProduct(product);
-            }
-        }
+        // 批量加载订单的商品信息
+        attachProducts(orders);
         
         // 统计总数
         int total = orderRepository.countOrders(status);
@@ -199,4 +468,79 @@ public class OrderService {
         
         return result;
     }
+    
+    /**
+     * 游标分页获取订单列表
+     * 按 (创建时间, ID) 倒序，cursor 为上一页返回的 nextCursor，首页传null。
+     * 返回的总数为缓存的近似值，每隔一段时间才重新统计一次。
+     */
+    public Map<String, Object> getOrdersPage(String cursor, int size, String status) {
+        LocalDateTime cursorCreatedAt = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("_", 2);
+                cursorCreatedAt = LocalDateTime.parse(parts[0]);
+                cursorId = Long.parseLong(parts[1]);
+            } catch (Exception e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+        
+        // 多查一条用于判断是否还有下一页
+        List<Order> orders = orderRepository.findOrdersBeforeCursor(status, cursorCreatedAt, cursorId, size + 1);
+        boolean hasMore = orders.size() > size;
+        if (hasMore) {
+            orders = new ArrayList<>(orders.subList(0, size));
+        }
+        attachProducts(orders);
+        
+        String nextCursor = null;
+        if (hasMore) {
+            Order last = orders.get(orders.size() - 1);
+            String key = last.getCreatedAt() + "_" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("orders", orders);
+        result.put("nextCursor", nextCursor);
+        result.put("hasMore", hasMore);
+        result.put("total", getApproximateOrderCount(status));
+        return result;
+    }
+    
+    /**
+     * 订单总数（缓存 order.list.count-cache-seconds 秒）
+     */
+    public long getApproximateOrderCount(String status) {
+        String key = status != null ? status : "";
+        long now = System.currentTimeMillis();
+        long[] cached = orderCounts.get(key);
+        if (cached != null && now - cached[1] < countCacheSeconds * 1000) {
+            return cached[0];
+        }
+        long count = orderRepository.countOrders(status);
+        orderCounts.put(key, new long[] { count, now });
+        return count;
+    }
+    
+    /**
+     * 为订单批量加载商品信息（一次IN查询，不随订单数量增加）
+     */
+    public void attachProducts(List<Order> orders) {
+        Set<Long> productIds = new HashSet<>();
+        for (Order order : orders) {
+            if (order.getProductId() != null) {
+                productIds.add(order.getProductId());
+            }
+        }
+        
+        Map<Long, Product> products = productService.getProductsByIds(productIds);
+        for (Order order : orders) {
+            if (order.getProductId() != null) {
+                order.setProduct(products.get(order.getProductId()));
+            }
+        }
+    }
 } 
\ No newline at end of file
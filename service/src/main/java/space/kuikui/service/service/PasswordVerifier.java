@@ -0,0 +1,139 @@
+package space.kuikui.service.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.util.ExecutorFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 密码校验线程池
+ * BCrypt 校验在独立的有界线程池中执行，不占用Tomcat工作线程。
+ * 按最近的平均校验耗时估算排队等待时间，超过上限或队列已满时立即拒绝，登录高峰不会拖慢其他接口。
+ * 校验之后的数据库写入等后续处理在单独的执行器中进行，数据库变慢时不会占用校验线程。
+ */
+@Component
+public class PasswordVerifier {
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Value("${auth.login.hash-threads:2}")
+    private int threads;
+
+    @Value("${auth.login.hash-queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${auth.login.max-wait-ms:2000}")
+    private long maxWaitMs;
+
+    @Value("${auth.login.completion-threads:4}")
+    private int completionThreads;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    private ThreadPoolExecutor executor;
+
+    private ExecutorService completionExecutor;
+
+    // 平均校验耗时（纳秒，指数加权）
+    private final AtomicLong averageNanos = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(100));
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final LongAdder verifiedCount = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-verify-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        completionExecutor = ExecutorFactory.newExecutor("login-complete", completionThreads, virtualThreadsEnabled);
+    }
+
+    /**
+     * 校验完成后的处理（更新登录时间、签发token）使用的执行器
+     */
+    public Executor completionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * 异步校验密码
+     * @throws RejectedExecutionException 预计等待时间过长或队列已满
+     */
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        long estimatedWaitNanos = (executor.getQueue().size() + 1) * averageNanos.get() / threads;
+        if (estimatedWaitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) {
+            rejectedCount.increment();
+            throw new RejectedExecutionException("登录请求过多，请稍后再试");
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return passwordEncoder.matches(rawPassword, encodedPassword);
+                } finally {
+                    record(System.nanoTime() - start);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            throw new RejectedExecutionException("登录请求过多，请稍后再试", e);
+        }
+    }
+
+    /**
+     * 校验耗时和排队情况
+     */
+    public Map<String, Object> getStats() {
+        long count = verifiedCount.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("verifiedCount", count);
+        stats.put("rejectedCount", rejectedCount.sum());
+        stats.put("averageMs", count > 0 ? totalNanos.sum() / count / 1_000_000.0 : 0);
+        stats.put("recentAverageMs", averageNanos.get() / 1_000_000.0);
+        stats.put("maxMs", maxNanos.get() / 1_000_000.0);
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        return stats;
+    }
+
+    private void record(long elapsedNanos) {
+        verifiedCount.increment();
+        totalNanos.add(elapsedNanos);
+        maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        averageNanos.updateAndGet(average -> average + (elapsedNanos - average) / 8);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        completionExecutor.shutdownNow();
+    }
+}
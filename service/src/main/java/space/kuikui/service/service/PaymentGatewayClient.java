@@ -0,0 +1,258 @@
+package space.kuikui.service.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.util.CircuitBreaker;
+import space.kuikui.service.util.ExecutorFactory;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 支付网关客户端
+ * 复用连接池，设置连接/读取超时，限制并发请求数，并在网关连续失败时熔断，
+ * 避免网关变慢时占满Tomcat工作线程。
+ */
+@Component
+public class PaymentGatewayClient {
+
+    @Value("${payment.api.base-url}")
+    private String apiBaseUrl;
+
+    @Value("${payment.gateway.connect-timeout-ms:3000}")
+    private long connectTimeoutMs;
+
+    @Value("${payment.gateway.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    @Value("${payment.gateway.max-concurrent:50}")
+    private int maxConcurrent;
+
+    @Value("${payment.gateway.execution-mode:platform}")
+    private String executionMode;
+
+    @Value("${payment.gateway.callback-threads:8}")
+    private int callbackThreads;
+
+    @Value("${payment.gateway.completion-threads:8}")
+    private int completionThreads;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${payment.confirm.query-way:query}")
+    private String queryWay;
+
+    @Value("${payment.gateway.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${payment.gateway.circuit-breaker.open-duration-ms:30000}")
+    private long openDurationMs;
+
+    private HttpClient httpClient;
+
+    private ExecutorService executor;
+
+    private ExecutorService completionExecutor;
+
+    private Semaphore permits;
+
+    private CircuitBreaker circuitBreaker;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LongAdder successCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        // 开启全局虚拟线程模式时，网关回调也使用虚拟线程
+        boolean virtual = virtualThreadsEnabled || "virtual".equalsIgnoreCase(executionMode);
+        executor = ExecutorFactory.newExecutor("payment-gateway", callbackThreads, virtual);
+        completionExecutor = ExecutorFactory.newExecutor("payment-complete", completionThreads, virtual);
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(executor)
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        permits = new Semaphore(maxConcurrent);
+        circuitBreaker = new CircuitBreaker(failureThreshold, openDurationMs);
+    }
+
+    /**
+     * 异步创建支付，返回网关的原始响应内容
+     * 等待网关响应期间不占用调用线程
+     */
+    public CompletableFuture<String> createPaymentAsync(String walletAddress, String paymentType,
+                                                        BigDecimal amount, String productName) {
+        String url = apiBaseUrl + "?way=pay&name=" + encode(walletAddress) +
+                "&type=" + encode(paymentType) +
+                "&value=" + amount +
+                "&product=" + encode(productName) +
+                "&jump=-";
+        return getAsync(url);
+    }
+
+    /**
+     * 批量查询支付状态，一次请求携带多个订单号（逗号分隔）
+     * 兼容网关返回数组、{"data": [...]}、单个订单对象或 {订单号: 状态} 几种格式
+     * @return 订单号 -> 网关返回的支付状态
+     */
+    public CompletableFuture<Map<String, String>> queryPaymentsAsync(List<String> orderIds) {
+        String url = apiBaseUrl + "?way=" + encode(queryWay) + "&oid=" + encode(String.join(",", orderIds));
+        return getAsync(url).thenApply(this::parseStatuses);
+    }
+
+    /**
+     * 异步GET请求网关
+     */
+    public CompletableFuture<String> getAsync(String url) {
+        // 先取得并发许可再询问熔断器：熔断器放行的探测请求必须真正发出并记录结果，否则会一直停在探测中
+        // 不等待许可，名额已满时立即拒绝，不阻塞调用线程
+        if (!permits.tryAcquire()) {
+            rejectedCount.increment();
+            return CompletableFuture.failedFuture(new RuntimeException("支付网关繁忙，请稍后再试"));
+        }
+
+        if (!circuitBreaker.allowRequest()) {
+            permits.release();
+            rejectedCount.increment();
+            return CompletableFuture.failedFuture(new RuntimeException("支付网关暂时不可用，请稍后再试"));
+        }
+
+        CompletableFuture<HttpResponse<String>> future;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(readTimeoutMs))
+                    .GET()
+                    .build();
+            future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            permits.release();
+            recordFailure();
+            return CompletableFuture.failedFuture(new RuntimeException("支付网关请求失败: " + rootMessage(e)));
+        }
+
+        return future
+                .handle((response, error) -> {
+                    permits.release();
+                    if (error != null) {
+                        recordFailure();
+                        throw new RuntimeException("支付网关请求失败: " + rootMessage(error));
+                    }
+                    if (response.statusCode() >= 500) {
+                        recordFailure();
+                        throw new RuntimeException("支付网关返回错误状态: " + response.statusCode());
+                    }
+                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        // 网关可达，不计入熔断；但4xx等多为鉴权或配置错误，对调用方仍是失败
+                        failureCount.increment();
+                        circuitBreaker.recordSuccess();
+                        throw new RuntimeException("支付网关返回错误状态: " + response.statusCode());
+                    }
+                    successCount.increment();
+                    circuitBreaker.recordSuccess();
+                    return response.body();
+                });
+    }
+
+    /**
+     * 处理网关响应后续工作（写数据库、确认支付）的执行器，不占用HTTP客户端的回调线程
+     */
+    public Executor completionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * 同步GET请求网关（带超时、限流和熔断）
+     */
+    public String get(String url) {
+        return getAsync(url).join();
+    }
+
+    /**
+     * 网关客户端运行状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("circuitState", circuitBreaker.getState());
+        stats.put("consecutiveFailures", circuitBreaker.getConsecutiveFailures());
+        stats.put("inFlight", maxConcurrent - permits.availablePermits());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("successCount", successCount.sum());
+        stats.put("failureCount", failureCount.sum());
+        stats.put("rejectedCount", rejectedCount.sum());
+        stats.put("executionMode", virtualThreadsEnabled ? "virtual" : executionMode);
+        return stats;
+    }
+
+    private Map<String, String> parseStatuses(String body) {
+        Map<String, String> statuses = new HashMap<>();
+        try {
+            JsonNode root = objectMapper.readTree(body);
+            JsonNode items = root.has("data") ? root.get("data") : root;
+            if (items.isArray()) {
+                for (JsonNode item : items) {
+                    putStatus(statuses, item);
+                }
+            } else if (items.has("oid")) {
+                putStatus(statuses, items);
+            } else {
+                items.fields().forEachRemaining(entry -> statuses.put(entry.getKey(), entry.getValue().asText()));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("无法解析支付状态响应: " + e.getMessage());
+        }
+        return statuses;
+    }
+
+    private static void putStatus(Map<String, String> statuses, JsonNode item) {
+        if (item.has("oid") && item.has("status")) {
+            statuses.put(item.get("oid").asText(), item.get("status").asText());
+        }
+    }
+
+    private void recordFailure() {
+        failureCount.increment();
+        circuitBreaker.recordFailure();
+    }
+
+    private static String encode(String value) {
+        return value == null ? "" : URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        completionExecutor.shutdownNow();
+    }
+}
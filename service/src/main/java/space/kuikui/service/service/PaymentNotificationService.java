@@ -0,0 +1,267 @@
+package space.kuikui.service.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import space.kuikui.service.entity.Order;
+import space.kuikui.service.entity.PaymentNotification;
+import space.kuikui.service.repository.PaymentNotificationRepository;
+import space.kuikui.service.task.PaymentConfirmationPoller;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 支付回调处理
+ * 回调只做去重和落库后立即返回，确认支付和发货放到异步队列中执行。
+ * 重复回调先由内存中的近期订单号缓存拦截，缓存未命中时由 payment_notifications 表的唯一索引兜底。
+ * 网关尚未确认支付的回调保持待处理状态并按次数退避重试。订单已支付时回调直接记为已处理；
+ * 只有订单尚不存在（被忽略）的订单号再次收到回调时才会重新处理。
+ */
+@Service
+public class PaymentNotificationService {
+
+    private static final int MAX_PAYLOAD_LENGTH = 2000;
+
+    @Autowired
+    private PaymentNotificationRepository notificationRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private PaymentGatewayClient paymentGatewayClient;
+
+    @Autowired
+    private PaymentConfirmationPoller paymentConfirmationPoller;
+
+    @Value("${payment.notify.dedup-cache-size:10000}")
+    private int dedupCacheSize;
+
+    @Value("${payment.notify.threads:2}")
+    private int threads;
+
+    @Value("${payment.notify.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${payment.notify.verify:true}")
+    private boolean verify;
+
+    @Value("${payment.notify.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${payment.notify.retry-backoff-ms:60000}")
+    private long retryBackoffMs;
+
+    @Value("${payment.notify.max-retry-backoff-ms:1800000}")
+    private long maxRetryBackoffMs;
+
+    @Value("${payment.confirm.paid-statuses:paid,success,1}")
+    private String paidStatuses;
+
+    private Set<String> paidStatusSet;
+
+    // 近期已接收的订单号（LRU，容量有上限）
+    private Set<String> recentOids;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder receivedCount = new LongAdder();
+
+    private final LongAdder duplicateCount = new LongAdder();
+
+    private final LongAdder processedCount = new LongAdder();
+
+    private final LongAdder deferredCount = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        paidStatusSet = Arrays.stream(paidStatuses.split(","))
+                .map(String::trim).map(String::toLowerCase).collect(Collectors.toSet());
+
+        recentOids = Collections.synchronizedSet(Collections.newSetFromMap(
+                new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > dedupCacheSize;
+                    }
+                }));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "payment-notify-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 接收支付回调
+     * @return 本次回调是否为新回调（重复回调返回false）
+     */
+    public boolean receive(String oid, String gatewayStatus, String payload) {
+        if (oid == null || oid.isBlank()) {
+            throw new RuntimeException("缺少订单号");
+        }
+        // 明确为未支付状态的回调不占用去重记录，以免之后的已支付回调被当作重复回调
+        if (gatewayStatus != null && !isPaid(gatewayStatus)) {
+            return false;
+        }
+
+        if (recentOids.contains(oid)) {
+            duplicateCount.increment();
+            return false;
+        }
+
+        PaymentNotification notification = new PaymentNotification();
+        notification.setOid(oid);
+        notification.setGatewayStatus(gatewayStatus);
+        notification.setPayload(payload != null && payload.length() > MAX_PAYLOAD_LENGTH
+                ? payload.substring(0, MAX_PAYLOAD_LENGTH) : payload);
+        try {
+            notificationRepository.insert(notification);
+        } catch (DuplicateKeyException e) {
+            recentOids.add(oid);
+            // 之前收到回调时订单尚不存在，重新处理
+            if (notificationRepository.reopen(oid, gatewayStatus) > 0) {
+                receivedCount.increment();
+                submit(oid);
+                return true;
+            }
+            duplicateCount.increment();
+            return false;
+        }
+        recentOids.add(oid);
+        receivedCount.increment();
+
+        submit(oid);
+        return true;
+    }
+
+    /**
+     * 重新处理未完成的回调（处理队列已满被推迟、处理失败或服务重启时遗留的）
+     */
+    @Scheduled(fixedDelayString = "${payment.notify.retry-interval-ms:60000}")
+    public void retryPendingNotifications() {
+        LocalDateTime before = LocalDateTime.now().minusSeconds(30);
+        List<PaymentNotification> pending = notificationRepository.findPendingNotifications(before, LocalDateTime.now(), maxAttempts, 100);
+        for (PaymentNotification notification : pending) {
+            if (!submit(notification.getOid())) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 回调处理状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("receivedCount", receivedCount.sum());
+        stats.put("duplicateCount", duplicateCount.sum());
+        stats.put("processedCount", processedCount.sum());
+        stats.put("deferredCount", deferredCount.sum());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("dedupCacheSize", recentOids.size());
+        return stats;
+    }
+
+    private boolean submit(String oid) {
+        try {
+            executor.execute(() -> process(oid));
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 回调已落库，稍后由定时任务重新处理
+            deferredCount.increment();
+            return false;
+        }
+    }
+
+    private void process(String oid) {
+        notificationRepository.incrementAttempts(oid);
+        try {
+            Order order = orderService.getOrderByOrderId(oid);
+            if (order == null) {
+                // 订单尚不存在（如网关订单号还未写回），之后再收到回调时重新处理
+                notificationRepository.markProcessed(oid, PaymentNotification.ProcessStatus.IGNORED.name(), LocalDateTime.now());
+                recentOids.remove(oid);
+                return;
+            }
+            if (order.getStatus() != Order.OrderStatus.PENDING && order.getStatus() != Order.OrderStatus.EXPIRED) {
+                // 已由轮询或之前的回调确认过，无需再向网关查询
+                markConfirmed(oid);
+                return;
+            }
+
+            // 回调接口无需登录，确认支付前先向网关核实，防止伪造回调
+            if (verify) {
+                String status = paymentGatewayClient.queryPaymentsAsync(List.of(oid)).join().get(oid);
+                if (status == null || !isPaid(status)) {
+                    // 回调可能早于网关查询结果更新，保持RECEIVED状态稍后重试
+                    scheduleRetry(oid);
+                    return;
+                }
+            }
+
+            // 返回false表示期间已被轮询确认，同样记为已处理
+            orderService.confirmPayment(oid);
+            markConfirmed(oid);
+        } catch (Exception e) {
+            // 保持RECEIVED状态，由定时任务重试
+            System.err.println("支付回调处理失败: " + oid + "，" + e.getMessage());
+            scheduleRetry(oid);
+        }
+    }
+
+    /**
+     * 订单已支付：回调记为已处理（终态），订单号保留在去重缓存中
+     */
+    private void markConfirmed(String oid) {
+        paymentConfirmationPoller.untrack(oid);
+        notificationRepository.markProcessed(oid, PaymentNotification.ProcessStatus.PROCESSED.name(), LocalDateTime.now());
+        processedCount.increment();
+    }
+
+    /**
+     * 按已处理次数退避，设置下次重试时间（次数用尽后由支付确认轮询兜底）
+     */
+    private void scheduleRetry(String oid) {
+        try {
+            PaymentNotification notification = notificationRepository.findByOid(oid);
+            int attempts = notification != null && notification.getAttempts() != null ? notification.getAttempts() : 1;
+            long delayMs = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(Math.max(attempts - 1, 0), 20));
+            notificationRepository.scheduleRetry(oid, LocalDateTime.now().plus(Duration.ofMillis(delayMs)));
+        } catch (Exception e) {
+            System.err.println("支付回调重试时间设置失败: " + oid + "，" + e.getMessage());
+        }
+    }
+
+    private boolean isPaid(String status) {
+        return paidStatusSet.contains(status.trim().toLowerCase());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 未处理的回调已落库，重启后由定时任务继续处理
+        executor.shutdown();
+    }
+}
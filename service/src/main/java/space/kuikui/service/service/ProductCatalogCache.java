@@ -0,0 +1,336 @@
+package space.kuikui.service.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import space.kuikui.service.entity.Product;
+import space.kuikui.service.repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品目录缓存
+ * 活跃商品列表和名称索引作为一个整体快照缓存，按ID查询的商品单独缓存（数量有上限，已满时逐条淘汰）。
+ * 商品或其卡密数量变化时按商品ID失效，并在事务提交后再失效一次，
+ * 避免提交前被并发读取的旧数据重新写入缓存。
+ * 按ID缓存的条目使用各自的版本号，失效一个商品不影响其他商品的加载；快照使用目录版本号，任一商品失效时递增。
+ * 卡密售出、增删只改变商品的剩余数量和销量，事务提交后直接替换缓存中的商品，不失效整个目录。
+ * 缓存中的商品不会被修改，返回给调用方的都是副本。
+ */
+@Component
+public class ProductCatalogCache {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Value("${product.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${product.cache.max-size:1000}")
+    private int maxSize;
+
+    private volatile Snapshot snapshot;
+
+    private final ConcurrentHashMap<Long, Entry> byId = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final ConcurrentHashMap<Long, Long> keyVersions = new ConcurrentHashMap<>();
+
+    // 内容版本号，失效和数量变化时都会递增（快照的写入和数量调整在 snapshotLock 内互斥）
+    private final AtomicLong contentVersion = new AtomicLong();
+
+    private final Object snapshotLock = new Object();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 所有活跃商品（返回的列表不可修改）
+     */
+    public List<Product> getActiveProducts() {
+        List<Product> products = new ArrayList<>();
+        for (Product product : activeSnapshot().products) {
+            products.add(copyOf(product));
+        }
+        return Collections.unmodifiableList(products);
+    }
+
+    /**
+     * 根据名称获取活跃商品
+     */
+    public Product getActiveProductByName(String name) {
+        return copyOf(activeSnapshot().byName.get(name));
+    }
+
+    /**
+     * 根据ID获取商品（包括已下架的商品）
+     */
+    public Product getProductById(Long id) {
+        Entry entry = byId.get(id);
+        if (entry != null && !entry.isExpired(ttlSeconds)) {
+            hitCount.increment();
+            return copyOf(entry.product);
+        }
+        missCount.increment();
+
+        long loadVersion = keyVersion(id);
+        Product product = productRepository.selectById(id);
+        if (product != null) {
+            put(product, loadVersion);
+        }
+        return product;
+    }
+
+    /**
+     * 批量获取商品，只查询缓存中没有的部分
+     */
+    public Map<Long, Product> getProductsByIds(Iterable<Long> ids) {
+        Map<Long, Product> products = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Entry entry = byId.get(id);
+            if (entry != null && !entry.isExpired(ttlSeconds)) {
+                hitCount.increment();
+                products.put(id, copyOf(entry.product));
+            } else {
+                missCount.increment();
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Long, Long> loadVersions = new HashMap<>();
+            for (Long id : missing) {
+                loadVersions.put(id, keyVersion(id));
+            }
+            for (Product product : productRepository.selectBatchIds(missing)) {
+                products.put(product.getId(), product);
+                Long loadVersion = loadVersions.get(product.getId());
+                if (loadVersion != null) {
+                    put(product, loadVersion);
+                }
+            }
+        }
+        return products;
+    }
+
+    /**
+     * 商品或其卡密数量发生变化时调用
+     */
+    public void invalidate(Long productId) {
+        evict(productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(productId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 商品剩余数量和销量发生增量变化时调用，当前有事务时在提交后才生效（回滚则不生效）
+     */
+    public void applyCountDelta(Long productId, long cardDelta, long soldDelta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    adjustCounts(productId, cardDelta, soldDelta);
+                }
+            });
+        } else {
+            adjustCounts(productId, cardDelta, soldDelta);
+        }
+    }
+
+    /**
+     * 目录内容版本号，任一商品失效或数量变化时递增
+     */
+    public long getVersion() {
+        return contentVersion.get();
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public Map<String, Object> getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hitCount", hits);
+        stats.put("missCount", misses);
+        stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        stats.put("cachedProducts", byId.size());
+        stats.put("version", version.get());
+        return stats;
+    }
+
+    private void evict(Long productId) {
+        version.incrementAndGet();
+        contentVersion.incrementAndGet();
+        if (productId != null) {
+            // 在条目的锁内递增该商品的版本号，与 put 的版本检查互斥
+            byId.compute(productId, (id, entry) -> {
+                keyVersions.merge(id, 1L, Long::sum);
+                return null;
+            });
+        }
+    }
+
+    private void adjustCounts(Long productId, long cardDelta, long soldDelta) {
+        // 递增该商品的版本号，加载期间读到旧数量的请求不会再写入
+        byId.compute(productId, (id, entry) -> {
+            keyVersions.merge(id, 1L, Long::sum);
+            return entry != null ? new Entry(withCounts(entry.product, cardDelta, soldDelta), entry.loadedAt) : null;
+        });
+        synchronized (snapshotLock) {
+            contentVersion.incrementAndGet();
+            Snapshot current = snapshot;
+            if (current != null) {
+                snapshot = current.withCounts(productId, cardDelta, soldDelta);
+            }
+        }
+    }
+
+    private long keyVersion(Long productId) {
+        return keyVersions.getOrDefault(productId, 0L);
+    }
+
+    private Snapshot activeSnapshot() {
+        Snapshot current = snapshot;
+        // 快照加载后发生过失效时版本号不一致，视为未命中
+        if (current != null && current.version == version.get() && !current.isExpired(ttlSeconds)) {
+            hitCount.increment();
+            return current;
+        }
+        missCount.increment();
+
+        long loadVersion = version.get();
+        long loadContentVersion = contentVersion.get();
+        Snapshot loaded = new Snapshot(productRepository.findByIsActiveTrue(), loadVersion, System.currentTimeMillis());
+        synchronized (snapshotLock) {
+            // 加载期间有数量调整时不写入，避免覆盖已调整的数量
+            if (loadContentVersion == contentVersion.get()) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 写入按ID缓存的商品副本，加载期间该商品被失效过则不写入；
+     * 已满时先淘汰过期的条目，没有过期条目时淘汰最早加载的一条
+     */
+    private void put(Product product, long loadVersion) {
+        if (!byId.containsKey(product.getId()) && byId.size() >= maxSize) {
+            evictForInsert();
+        }
+        Product cached = copyOf(product);
+        byId.compute(product.getId(), (id, entry) -> loadVersion == keyVersion(id)
+                ? new Entry(cached, System.currentTimeMillis()) : entry);
+    }
+
+    private void evictForInsert() {
+        boolean removed = false;
+        Map.Entry<Long, Entry> oldest = null;
+        for (Map.Entry<Long, Entry> candidate : byId.entrySet()) {
+            if (candidate.getValue().isExpired(ttlSeconds)) {
+                removed |= byId.remove(candidate.getKey(), candidate.getValue());
+            } else if (oldest == null || candidate.getValue().loadedAt < oldest.getValue().loadedAt) {
+                oldest = candidate;
+            }
+        }
+        if (!removed && oldest != null) {
+            byId.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private static Product copyOf(Product product) {
+        if (product == null) {
+            return null;
+        }
+        Product copy = new Product();
+        copy.setId(product.getId());
+        copy.setName(product.getName());
+        copy.setDescription(product.getDescription());
+        copy.setPrice(product.getPrice());
+        copy.setPaymentType(product.getPaymentType());
+        copy.setCardCount(product.getCardCount());
+        copy.setSoldCount(product.getSoldCount());
+        copy.setIsActive(product.getIsActive());
+        copy.setCreatedAt(product.getCreatedAt());
+        copy.setUpdatedAt(product.getUpdatedAt());
+        return copy;
+    }
+
+    private static Product withCounts(Product product, long cardDelta, long soldDelta) {
+        Product copy = copyOf(product);
+        copy.setCardCount((int) ((product.getCardCount() != null ? product.getCardCount() : 0) + cardDelta));
+        copy.setSoldCount((int) ((product.getSoldCount() != null ? product.getSoldCount() : 0) + soldDelta));
+        return copy;
+    }
+
+    private static class Entry {
+
+        private final Product product;
+
+        private final long loadedAt;
+
+        Entry(Product product, long loadedAt) {
+            this.product = product;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired(long ttlSeconds) {
+            return System.currentTimeMillis() - loadedAt > ttlSeconds * 1000;
+        }
+    }
+
+    private static class Snapshot {
+
+        private final List<Product> products;
+
+        private final Map<String, Product> byName = new HashMap<>();
+
+        private final long version;
+
+        private final long loadedAt;
+
+        Snapshot(List<Product> products, long version, long loadedAt) {
+            this.products = Collections.unmodifiableList(products);
+            this.version = version;
+            this.loadedAt = loadedAt;
+            for (Product product : products) {
+                byName.putIfAbsent(product.getName(), product);
+            }
+        }
+
+        /**
+         * 替换其中一个商品的数量，版本号和加载时间不变
+         */
+        Snapshot withCounts(Long productId, long cardDelta, long soldDelta) {
+            List<Product> adjusted = new ArrayList<>(products.size());
+            for (Product product : products) {
+                adjusted.add(product.getId().equals(productId) ? ProductCatalogCache.withCounts(product, cardDelta, soldDelta) : product);
+            }
+            return new Snapshot(adjusted, version, loadedAt);
+        }
+
+        boolean isExpired(long ttlSeconds) {
+            return System.currentTimeMillis() - loadedAt > ttlSeconds * 1000;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package space.kuikui.service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 商品列表接口的响应缓存
+ * 每个目录版本只序列化一次，同时保存原始JSON和gzip压缩后的字节，ETag由内容摘要生成。
+ * 缓存失效时只有一个请求负责重新生成（不持有锁），其余并发请求等待同一个结果。
+ */
+@Component
+public class ProductListResponseCache {
+
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${product.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private volatile Rendered rendered;
+
+    private final AtomicReference<CompletableFuture<Rendered>> rendering = new AtomicReference<>();
+
+    /**
+     * 当前商品列表的序列化结果
+     */
+    public Rendered get() {
+        Rendered current = rendered;
+        if (isFresh(current)) {
+            return current;
+        }
+
+        CompletableFuture<Rendered> future = new CompletableFuture<>();
+        CompletableFuture<Rendered> inFlight = rendering.compareAndExchange(null, future);
+        if (inFlight != null) {
+            // 已有请求正在生成，等待其结果
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            current = rendered;
+            Rendered loaded = isFresh(current) ? current : render();
+            future.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.set(null);
+        }
+    }
+
+    private boolean isFresh(Rendered current) {
+        return current != null && current.version == productCatalogCache.getVersion()
+                && System.currentTimeMillis() - current.renderedAt <= ttlSeconds * 1000;
+    }
+
+    private Rendered render() {
+        long version = productCatalogCache.getVersion();
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", productCatalogCache.getActiveProducts());
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(response);
+            Rendered loaded = new Rendered(version, "\"" + DigestUtils.md5DigestAsHex(json) + "\"", json, gzip(json));
+            rendered = loaded;
+            return loaded;
+        } catch (IOException e) {
+            throw new RuntimeException("商品列表序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(data);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 序列化后的商品列表
+     */
+    public static class Rendered {
+
+        private final long version;
+
+        private final String etag;
+
+        private final byte[] json;
+
+        private final byte[] gzip;
+
+        private final long renderedAt = System.currentTimeMillis();
+
+        Rendered(long version, String etag, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.etag = etag;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        /**
+         * If-None-Match 是否与当前ETag匹配
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.startsWith("W/")) {
+                    trimmed = trimmed.substring(2);
+                }
+                if (trimmed.equals(etag) || trimmed.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
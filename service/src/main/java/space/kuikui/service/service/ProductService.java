@@ -3,11 +3,15 @@ package space.kuikui.service.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import space.kuikui.service.entity.Product;
 import space.kuikui.service.repository.CardCodeRepository;
 import space.kuikui.service.repository.ProductRepository;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ProductService {
@@ -18,25 +22,45 @@ public class ProductService {
     @Autowired
     private CardCodeRepository cardCodeRepository;
     
+    @Autowired
+    private ProductCatalogCache productCatalogCache;
+    
+    @Autowired
+    private StatisticsService statisticsService;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
     /**
      * 获取所有活跃商品
      */
     public List<Product> getAllActiveProducts() {
-        return productRepository.findByIsActiveTrue();
+        return productCatalogCache.getActiveProducts();
     }
     
     /**
      * 根据ID获取商品
      */
     public Product getProductById(Long id) {
-        return productRepository.selectById(id);
+        return productCatalogCache.getProductById(id);
+    }
+    
+    /**
+     * 批量获取商品，缓存未命中的部分一次IN查询
+     * @return 商品ID -> 商品
+     */
+    public Map<Long, Product> getProductsByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new HashMap<>();
+        }
+        return productCatalogCache.getProductsByIds(ids);
     }
     
     /**
      * 根据名称获取商品
      */
     public Product getProductByName(String name) {
-        return productRepository.findByNameAndIsActiveTrue(name);
+        return productCatalogCache.getActiveProductByName(name);
     }
     
     /**
@@ -44,7 +68,15 @@ public class ProductService {
      */
     @Transactional
     public Product createProduct(Product product) {
+        // 新商品还没有卡密，数量由之后的卡密变动增量维护
+        product.setCardCount(0);
+        product.setSoldCount(0);
         productRepository.insert(product);
+        productCatalogCache.invalidate(product.getId());
+        statisticsService.adjust(StatisticsService.Counter.TOTAL_PRODUCTS, 1);
+        if (Boolean.TRUE.equals(product.getIsActive())) {
+            statisticsService.adjust(StatisticsService.Counter.ACTIVE_PRODUCTS, 1);
+        }
         return product;
     }
     
@@ -53,10 +85,19 @@ public class ProductService {
      */
     @Transactional
     public Product updateProduct(Product product) {
-        // 更新卡密数量
-        product.setCardCount(cardCodeRepository.countByProductIdAndIsUsedFalse(product.getId()));
+        Product existing = productRepository.selectById(product.getId());
+        
+        // 卡密数量和销量由卡密变动时增量维护，这里不覆盖
+        product.setCardCount(null);
+        product.setSoldCount(null);
         productRepository.updateById(product);
-        return product;
+        productCatalogCache.invalidate(product.getId());
+        
+        // 上下架状态变化时更新活跃商品统计
+        if (existing != null && product.getIsActive() != null && !product.getIsActive().equals(existing.getIsActive())) {
+            statisticsService.adjust(StatisticsService.Counter.ACTIVE_PRODUCTS, product.getIsActive() ? 1 : -1);
+        }
+        return productRepository.selectById(product.getId());
     }
     
     /**
@@ -66,8 +107,12 @@ public class ProductService {
     public void deleteProduct(Long id) {
         Product product = productRepository.selectById(id);
         if (product != null) {
+            if (Boolean.TRUE.equals(product.getIsActive())) {
+                statisticsService.adjust(StatisticsService.Counter.ACTIVE_PRODUCTS, -1);
+            }
             product.setIsActive(false);
             productRepository.updateById(product);
+            productCatalogCache.invalidate(id);
         }
     }
     
@@ -75,6 +120,40 @@ public class ProductService {
      * 检查商品是否有足够的卡密
      */
     public boolean hasAvailableCardCodes(Product product) {
-        return cardCodeRepository.countByProductIdAndIsUsedFalse(product.getId()) > 0;
+        return !cardCodeRepository.findUnusedIdsAfter(product.getId(), 0, 1).isEmpty();
+    }
+    
+    /**
+     * 与卡密表对账，修正各商品的剩余卡密数量和销量
+     * 每个商品在独立事务中先锁定商品行再统计，避免覆盖并发的增量更新
+     * @return 数量有偏差并被修正的商品数
+     */
+    public int reconcileCardCounts() {
+        int corrected = 0;
+        for (Long productId : productRepository.findAllIds()) {
+            Boolean changed = transactionTemplate.execute(status -> {
+                Product product = productRepository.lockById(productId);
+                if (product == null) {
+                    return false;
+                }
+                int cardCount = cardCodeRepository.countByProductIdAndIsUsedFalse(productId);
+                // 销量为已使用的卡密数，已归档的卡密都是已使用的；删除已使用的卡密时销量同样减少
+                int soldCount = cardCodeRepository.countByProductIdAndIsUsedTrue(productId)
+                        + cardCodeRepository.countArchivedByProductId(productId);
+                if (product.getCardCount() != null && product.getCardCount() == cardCount
+                        && product.getSoldCount() != null && product.getSoldCount() == soldCount) {
+                    return false;
+                }
+                System.err.println(String.format("商品卡密数量对账修正: productId=%d, cardCount %s -> %d, soldCount %s -> %d",
+                        productId, product.getCardCount(), cardCount, product.getSoldCount(), soldCount));
+                productRepository.updateCounts(productId, cardCount, soldCount);
+                productCatalogCache.invalidate(productId);
+                return true;
+            });
+            if (Boolean.TRUE.equals(changed)) {
+                corrected++;
+            }
+        }
+        return corrected;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,148 @@
+package space.kuikui.service.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import space.kuikui.service.entity.Order;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 查询密钥结果缓存
+ * 按查询密钥缓存最近的订单（由 OrderService 加载，已包含商品信息且数量有上限），
+ * 订单创建、状态变化或发货时按查询密钥失效，并在事务提交后再失效一次。
+ */
+@Component
+public class QueryKeyResultCache {
+
+    @Value("${order.query-key.cache-ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${order.query-key.cache-max-size:10000}")
+    private int maxSize;
+
+    private final ConcurrentHashMap<String, Entry> byKey = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 查询密钥对应的订单，未命中时通过 loader 加载
+     */
+    public Result get(String queryKey, Function<String, Result> loader) {
+        Entry entry = byKey.get(queryKey);
+        if (entry != null && !entry.isExpired(ttlSeconds)) {
+            hitCount.increment();
+            return entry.result;
+        }
+        missCount.increment();
+
+        long loadVersion = version.get();
+        Result result = loader.apply(queryKey);
+
+        // 加载期间发生过失效则不写入缓存
+        if (loadVersion == version.get()) {
+            if (byKey.size() >= maxSize) {
+                evictExpired();
+                if (byKey.size() >= maxSize) {
+                    byKey.clear();
+                }
+            }
+            byKey.put(queryKey, new Entry(result));
+        }
+        return result;
+    }
+
+    /**
+     * 查询密钥下的订单发生变化时调用
+     */
+    public void invalidate(String queryKey) {
+        if (queryKey == null) {
+            return;
+        }
+        evict(queryKey);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(queryKey);
+                }
+            });
+        }
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public Map<String, Object> getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hitCount", hits);
+        stats.put("missCount", misses);
+        stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        stats.put("cachedKeys", byKey.size());
+        return stats;
+    }
+
+    private void evict(String queryKey) {
+        version.incrementAndGet();
+        byKey.remove(queryKey);
+    }
+
+    private void evictExpired() {
+        byKey.values().removeIf(entry -> entry.isExpired(ttlSeconds));
+    }
+
+    /**
+     * 查询结果（订单按创建时间倒序，列表不可修改）
+     */
+    public static class Result {
+
+        private final List<Order> orders;
+
+        private final boolean truncated;
+
+        public Result(List<Order> orders, boolean truncated) {
+            this.orders = Collections.unmodifiableList(orders);
+            this.truncated = truncated;
+        }
+
+        public List<Order> getOrders() {
+            return orders;
+        }
+
+        /**
+         * 是否还有更早的订单未返回
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    private static class Entry {
+
+        private final Result result;
+
+        private final long loadedAt = System.currentTimeMillis();
+
+        Entry(Result result) {
+            this.result = result;
+        }
+
+        boolean isExpired(long ttlSeconds) {
+            return System.currentTimeMillis() - loadedAt > ttlSeconds * 1000;
+        }
+    }
+}
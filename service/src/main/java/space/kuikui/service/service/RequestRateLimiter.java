@@ -0,0 +1,195 @@
+package space.kuikui.service.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 公开接口限流（令牌桶，内存中）
+ * 按客户端IP和查询密钥分别限流。令牌桶按键的哈希分散到多个分段中，每个分段一把锁、
+ * 按最近访问顺序淘汰，总数量有上限，伪造大量IP时内存占用也不会增长。
+ */
+@Component
+public class RequestRateLimiter {
+
+    public enum Limit {
+        CREATE_BY_IP,
+        CREATE_BY_QUERY_KEY,
+        QUERY_BY_IP,
+        QUERY_BY_QUERY_KEY
+    }
+
+    private static final int STRIPES = 16;
+
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${rate-limit.create.ip.capacity:10}")
+    private int createIpCapacity;
+
+    @Value("${rate-limit.create.ip.per-minute:10}")
+    private double createIpPerMinute;
+
+    @Value("${rate-limit.create.query-key.capacity:5}")
+    private int createKeyCapacity;
+
+    @Value("${rate-limit.create.query-key.per-minute:5}")
+    private double createKeyPerMinute;
+
+    @Value("${rate-limit.query.ip.capacity:30}")
+    private int queryIpCapacity;
+
+    @Value("${rate-limit.query.ip.per-minute:60}")
+    private double queryIpPerMinute;
+
+    @Value("${rate-limit.query.query-key.capacity:10}")
+    private int queryKeyCapacity;
+
+    @Value("${rate-limit.query.query-key.per-minute:20}")
+    private double queryKeyPerMinute;
+
+    private final Map<Limit, Rule> rules = new EnumMap<>(Limit.class);
+
+    private final Map<Limit, LongAdder> limitedCounts = new EnumMap<>(Limit.class);
+
+    private final LongAdder allowedCount = new LongAdder();
+
+    private Stripe[] stripes;
+
+    @PostConstruct
+    public void init() {
+        rules.put(Limit.CREATE_BY_IP, new Rule(createIpCapacity, createIpPerMinute));
+        rules.put(Limit.CREATE_BY_QUERY_KEY, new Rule(createKeyCapacity, createKeyPerMinute));
+        rules.put(Limit.QUERY_BY_IP, new Rule(queryIpCapacity, queryIpPerMinute));
+        rules.put(Limit.QUERY_BY_QUERY_KEY, new Rule(queryKeyCapacity, queryKeyPerMinute));
+        for (Limit limit : Limit.values()) {
+            limitedCounts.put(limit, new LongAdder());
+        }
+
+        int keysPerStripe = Math.max(1, maxKeys / STRIPES);
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(keysPerStripe);
+        }
+    }
+
+    /**
+     * 尝试消耗一个令牌
+     * @return 需要等待的秒数，0 表示允许请求（键为空时不限流）
+     */
+    public long tryAcquire(Limit limit, String key) {
+        if (!enabled || key == null || key.isEmpty()) {
+            return 0;
+        }
+        Rule rule = rules.get(limit);
+        String bucketKey = limit.ordinal() + ":" + key;
+        int hash = bucketKey.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+
+        long now = System.nanoTime();
+        long waitNanos;
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(bucketKey);
+            if (bucket == null) {
+                bucket = new Bucket(rule.capacity, now);
+                stripe.buckets.put(bucketKey, bucket);
+            }
+            waitNanos = bucket.tryConsume(rule, now);
+        }
+
+        if (waitNanos > 0) {
+            limitedCounts.get(limit).increment();
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+        }
+        allowedCount.increment();
+        return 0;
+    }
+
+    /**
+     * 限流统计
+     */
+    public Map<String, Object> getStats() {
+        int trackedKeys = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                trackedKeys += stripe.buckets.size();
+            }
+        }
+        Map<String, Object> limited = new HashMap<>();
+        for (Map.Entry<Limit, LongAdder> entry : limitedCounts.entrySet()) {
+            limited.put(entry.getKey().name(), entry.getValue().sum());
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("allowedCount", allowedCount.sum());
+        stats.put("limitedCount", limited);
+        stats.put("trackedKeys", trackedKeys);
+        stats.put("maxKeys", maxKeys);
+        return stats;
+    }
+
+    private static class Rule {
+
+        private final double capacity;
+
+        private final double tokensPerNano;
+
+        Rule(int capacity, double perMinute) {
+            this.capacity = Math.max(1, capacity);
+            this.tokensPerNano = perMinute / TimeUnit.MINUTES.toNanos(1);
+        }
+    }
+
+    private static class Bucket {
+
+        private double tokens;
+
+        private long refilledAt;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        /**
+         * @return 0 表示成功消耗，否则为下一个令牌可用前的纳秒数
+         */
+        long tryConsume(Rule rule, long now) {
+            tokens = Math.min(rule.capacity, tokens + (now - refilledAt) * rule.tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            if (rule.tokensPerNano <= 0) {
+                return Long.MAX_VALUE / 2;
+            }
+            return (long) Math.ceil((1 - tokens) / rule.tokensPerNano);
+        }
+    }
+
+    private static class Stripe {
+
+        private final LinkedHashMap<String, Bucket> buckets;
+
+        Stripe(int maxKeys) {
+            this.buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                    return size() > maxKeys;
+                }
+            };
+        }
+    }
+}
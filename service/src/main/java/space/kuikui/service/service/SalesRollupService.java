@@ -0,0 +1,239 @@
+package space.kuikui.service.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.kuikui.service.entity.Order;
+import space.kuikui.service.entity.SalesRollup;
+import space.kuikui.service.repository.OrderRepository;
+import space.kuikui.service.repository.SalesRollupRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 销售统计汇总
+ * 订单从待支付变为已支付时，在同一事务中把订单数和金额累加到分钟/小时/天三个粒度的汇总行，
+ * 按订单创建时间归入时间桶（与回填使用同一口径）。区间查询只读汇总表，不再对 orders 做 GROUP BY。
+ */
+@Service
+public class SalesRollupService {
+
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+
+    // 各粒度单次查询允许的最大时间跨度，避免一次返回过多汇总行
+    private static final Map<SalesRollup.BucketType, Duration> MAX_RANGE = Map.of(
+            SalesRollup.BucketType.MINUTE, Duration.ofDays(2),
+            SalesRollup.BucketType.HOUR, Duration.ofDays(92),
+            SalesRollup.BucketType.DAY, Duration.ofDays(3660));
+
+    @Autowired
+    private SalesRollupRepository salesRollupRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${statistics.sales.upsert-batch-size:500}")
+    private int upsertBatchSize;
+
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sales-rollup-backfill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final AtomicBoolean backfillRunning = new AtomicBoolean();
+
+    private volatile Map<String, Object> backfillStatus;
+
+    /**
+     * 记录一笔已支付订单（调用方需在订单状态变更的同一事务中调用）
+     */
+    public void recordPaidOrder(Order order) {
+        if (order.getCreatedAt() == null || order.getProductId() == null) {
+            return;
+        }
+        Map<String, SalesRollup> rollups = new LinkedHashMap<>();
+        accumulate(rollups, order);
+        salesRollupRepository.upsertIncrements(new ArrayList<>(rollups.values()));
+    }
+
+    /**
+     * 按时间范围查询销售汇总
+     */
+    public Map<String, Object> getSales(SalesRollup.BucketType bucketType, LocalDateTime from, LocalDateTime to,
+                                        Long productId, String paymentType) {
+        if (!from.isBefore(to)) {
+            throw new RuntimeException("开始时间必须早于结束时间");
+        }
+        if (Duration.between(from, to).compareTo(MAX_RANGE.get(bucketType)) > 0) {
+            throw new RuntimeException(bucketType + " 粒度最多查询 " + MAX_RANGE.get(bucketType).toDays() + " 天");
+        }
+
+        List<SalesRollup> buckets = salesRollupRepository.findRange(bucketType.name(),
+                truncate(from, bucketType), to, productId, paymentType);
+
+        long orderCount = 0;
+        BigDecimal revenue = BigDecimal.ZERO;
+        for (SalesRollup bucket : buckets) {
+            orderCount += bucket.getOrderCount();
+            revenue = revenue.add(bucket.getRevenue());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("granularity", bucketType);
+        result.put("from", from);
+        result.put("to", to);
+        result.put("buckets", buckets);
+        result.put("orderCount", orderCount);
+        result.put("revenue", revenue);
+        return result;
+    }
+
+    /**
+     * 在后台回填汇总表：按天重建指定范围内的汇总行，未指定时从最早的订单开始到当前
+     */
+    public Map<String, Object> startBackfill(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from;
+        if (start == null) {
+            start = orderRepository.findEarliestCreatedAt();
+        }
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        if (start == null || !start.isBefore(end)) {
+            throw new RuntimeException("没有需要回填的订单");
+        }
+        if (!backfillRunning.compareAndSet(false, true)) {
+            throw new RuntimeException("已有回填任务正在执行");
+        }
+        LocalDateTime firstDay = start.truncatedTo(ChronoUnit.DAYS);
+        LocalDateTime lastDay = end.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+
+        Map<String, Object> status = new ConcurrentHashMap<>();
+        status.put("status", "RUNNING");
+        status.put("from", firstDay);
+        status.put("to", lastDay);
+        status.put("totalDays", ChronoUnit.DAYS.between(firstDay, lastDay));
+        status.put("processedDays", 0L);
+        status.put("processedOrders", 0L);
+        status.put("startedAt", LocalDateTime.now());
+        backfillStatus = status;
+
+        backfillExecutor.execute(() -> runBackfill(firstDay, lastDay, status));
+        return status;
+    }
+
+    /**
+     * 回填进度
+     */
+    public Map<String, Object> getBackfillStatus() {
+        return backfillStatus;
+    }
+
+    private void runBackfill(LocalDateTime firstDay, LocalDateTime lastDay, Map<String, Object> status) {
+        try {
+            long processedDays = 0;
+            long processedOrders = 0;
+            for (LocalDateTime day = firstDay; day.isBefore(lastDay); day = day.plusDays(1)) {
+                processedOrders += rebuildDay(day);
+                processedDays++;
+                status.put("processedDays", processedDays);
+                status.put("processedOrders", processedOrders);
+            }
+            status.put("status", "COMPLETED");
+        } catch (Exception e) {
+            System.err.println("销售汇总回填失败: " + e.getMessage());
+            status.put("status", "FAILED");
+            status.put("error", String.valueOf(e.getMessage()));
+        } finally {
+            status.put("finishedAt", LocalDateTime.now());
+            backfillRunning.set(false);
+        }
+    }
+
+    /**
+     * 在一个事务中重建某一天的汇总行
+     * 先按粒度逐个删除当天的汇总行，删除沿 uk_bucket 索引进行，在可重复读隔离级别下锁住当天的索引范围（含间隙）。
+     * 之后的订单扫描是快照读：删除前已提交的订单会被扫描到；尚未提交的确认事务累加汇总行时
+     * 要等这些锁释放，扫描时也看不到它的支付状态，提交后再由它自己累加，因此不会重复或遗漏。
+     */
+    private long rebuildDay(LocalDateTime day) {
+        LocalDateTime nextDay = day.plusDays(1);
+        return transactionTemplate.execute(txStatus -> {
+            for (SalesRollup.BucketType bucketType : SalesRollup.BucketType.values()) {
+                salesRollupRepository.deleteRange(bucketType.name(), day, nextDay);
+            }
+
+            Map<String, SalesRollup> rollups = new LinkedHashMap<>();
+            long count = 0;
+            long lastId = 0;
+            List<Order> batch;
+            do {
+                batch = orderRepository.findPaidOrdersCreatedBetween(day, nextDay, lastId, BACKFILL_BATCH_SIZE);
+                for (Order order : batch) {
+                    accumulate(rollups, order);
+                    lastId = order.getId();
+                }
+                count += batch.size();
+            } while (batch.size() == BACKFILL_BATCH_SIZE);
+
+            List<SalesRollup> rows = new ArrayList<>(rollups.values());
+            for (int i = 0; i < rows.size(); i += upsertBatchSize) {
+                salesRollupRepository.upsertIncrements(rows.subList(i, Math.min(i + upsertBatchSize, rows.size())));
+            }
+            return count;
+        });
+    }
+
+    private static void accumulate(Map<String, SalesRollup> rollups, Order order) {
+        String paymentType = order.getPaymentType() != null ? order.getPaymentType() : "";
+        BigDecimal amount = order.getAmount() != null ? order.getAmount() : BigDecimal.ZERO;
+
+        for (SalesRollup.BucketType bucketType : SalesRollup.BucketType.values()) {
+            LocalDateTime bucketStart = truncate(order.getCreatedAt(), bucketType);
+            String key = bucketType + "|" + bucketStart + "|" + order.getProductId() + "|" + paymentType;
+            SalesRollup rollup = rollups.computeIfAbsent(key, k -> {
+                SalesRollup created = new SalesRollup();
+                created.setBucketType(bucketType);
+                created.setBucketStart(bucketStart);
+                created.setProductId(order.getProductId());
+                created.setPaymentType(paymentType);
+                return created;
+            });
+            rollup.setOrderCount(rollup.getOrderCount() + 1);
+            rollup.setRevenue(rollup.getRevenue().add(amount));
+        }
+    }
+
+    private static LocalDateTime truncate(LocalDateTime time, SalesRollup.BucketType bucketType) {
+        switch (bucketType) {
+            case MINUTE:
+                return time.truncatedTo(ChronoUnit.MINUTES);
+            case HOUR:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            default:
+                return time.truncatedTo(ChronoUnit.DAYS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+}
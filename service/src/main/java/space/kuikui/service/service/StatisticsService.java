@@ -0,0 +1,217 @@
+package space.kuikui.service.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import space.kuikui.service.repository.CardCodeRepository;
+import space.kuikui.service.repository.OrderRepository;
+import space.kuikui.service.repository.ProductRepository;
+import space.kuikui.service.repository.UserRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 统计计数器
+ * 各项总数保存在内存中，订单、卡密、商品、用户变化时在事务提交后增量更新，
+ * 统计接口直接读取计数器，不再每次执行 COUNT(*)。
+ * 启动时和定时任务中与数据库对账，并记录发现的偏差。
+ * 每个计数器带一个变更序号，登记增量和增量生效（或回滚）时都会递增，对账据此判断统计期间是否有并发变更。
+ */
+@Service
+public class StatisticsService {
+
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    public enum Counter {
+        TOTAL_PRODUCTS,
+        ACTIVE_PRODUCTS,
+        TOTAL_CARD_CODES,
+        AVAILABLE_CARD_CODES,
+        TOTAL_ORDERS,
+        DELIVERED_ORDERS,
+        TOTAL_USERS,
+        ADMIN_USERS
+    }
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CardCodeRepository cardCodeRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final Map<Counter, AtomicLong> counters = new EnumMap<>(Counter.class);
+
+    private final Map<Counter, AtomicLong> epochs = new EnumMap<>(Counter.class);
+
+    private final Map<Counter, AtomicInteger> pending = new EnumMap<>(Counter.class);
+
+    private volatile boolean initialized;
+
+    private volatile Map<String, Object> lastReconcile;
+
+    public StatisticsService() {
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new AtomicLong());
+            epochs.put(counter, new AtomicLong());
+            pending.put(counter, new AtomicInteger());
+        }
+    }
+
+    /**
+     * 调整计数器，当前有事务时在提交后才生效（回滚则不生效）
+     */
+    public void adjust(Counter counter, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 从登记到事务结束期间视为有未完成的增量，对账不会写入该计数器
+            pending.get(counter).incrementAndGet();
+            epochs.get(counter).incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(counter, delta);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    pending.get(counter).decrementAndGet();
+                    epochs.get(counter).incrementAndGet();
+                }
+            });
+        } else {
+            apply(counter, delta);
+        }
+    }
+
+    private void apply(Counter counter, long delta) {
+        AtomicLong value = counters.get(counter);
+        // 与对账写入互斥，避免增量被对账结果覆盖
+        synchronized (value) {
+            value.addAndGet(delta);
+            epochs.get(counter).incrementAndGet();
+        }
+    }
+
+    /**
+     * 当前各项统计
+     */
+    public Map<String, Object> getStatistics() {
+        if (!initialized) {
+            reconcile();
+        }
+        long totalCardCodes = get(Counter.TOTAL_CARD_CODES);
+        long availableCardCodes = get(Counter.AVAILABLE_CARD_CODES);
+
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("totalProducts", get(Counter.TOTAL_PRODUCTS));
+        statistics.put("activeProducts", get(Counter.ACTIVE_PRODUCTS));
+        statistics.put("totalCardCodes", totalCardCodes);
+        statistics.put("availableCardCodes", availableCardCodes);
+        statistics.put("usedCardCodes", totalCardCodes - availableCardCodes);
+        statistics.put("totalOrders", get(Counter.TOTAL_ORDERS));
+        statistics.put("deliveredOrders", get(Counter.DELIVERED_ORDERS));
+        statistics.put("totalUsers", get(Counter.TOTAL_USERS));
+        statistics.put("adminUsers", get(Counter.ADMIN_USERS));
+        return statistics;
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter).get();
+    }
+
+    /**
+     * 最近一次对账结果
+     */
+    public Map<String, Object> getLastReconcile() {
+        return lastReconcile;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${statistics.reconcile-interval-ms:600000}", initialDelayString = "${statistics.reconcile-interval-ms:600000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    /**
+     * 与数据库对账
+     * 统计前没有未完成的增量、且统计期间变更序号没有变化时才写入统计结果；否则无法判断并发的增量
+     * 是否已包含在统计结果中，重试几次后仍有变更则跳过，留到下次对账。
+     * 不在事务中调用 adjust 的变更（数据库已提交、增量尚未登记）无法被发现，可能有短暂偏差，由下次对账修正。
+     */
+    public synchronized Map<String, Object> reconcile() {
+        long startTime = System.currentTimeMillis();
+        Map<String, Long> drift = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+
+        reconcile(Counter.TOTAL_PRODUCTS, () -> productRepository.selectCount(null), drift, skipped);
+        reconcile(Counter.ACTIVE_PRODUCTS, () -> productRepository.countByIsActiveTrue(), drift, skipped);
+        reconcile(Counter.TOTAL_CARD_CODES, () -> cardCodeRepository.countAllIncludingArchived(), drift, skipped);
+        reconcile(Counter.AVAILABLE_CARD_CODES, () -> cardCodeRepository.countAllByIsUsedFalse(), drift, skipped);
+        reconcile(Counter.TOTAL_ORDERS, () -> orderRepository.countAllIncludingArchived(), drift, skipped);
+        reconcile(Counter.DELIVERED_ORDERS, () -> orderRepository.countDeliveredIncludingArchived(), drift, skipped);
+        reconcile(Counter.TOTAL_USERS, () -> userRepository.selectCount(null), drift, skipped);
+        reconcile(Counter.ADMIN_USERS, () -> userRepository.countByRoleAdmin(), drift, skipped);
+
+        Map<String, Object> report = new HashMap<>();
+        report.put("reconciledAt", LocalDateTime.now());
+        report.put("elapsedMs", System.currentTimeMillis() - startTime);
+        report.put("initial", !initialized);
+        report.put("drift", drift);
+        report.put("skipped", skipped);
+        lastReconcile = report;
+
+        if (initialized && !drift.isEmpty()) {
+            System.err.println("统计对账发现偏差并已修正: " + drift);
+        }
+        initialized = true;
+        return report;
+    }
+
+    private void reconcile(Counter counter, LongSupplier query, Map<String, Long> drift, List<String> skipped) {
+        AtomicLong value = counters.get(counter);
+        AtomicLong epoch = epochs.get(counter);
+        for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+            long startEpoch = epoch.get();
+            if (pending.get(counter).get() > 0) {
+                continue;
+            }
+            long actual = query.getAsLong();
+            synchronized (value) {
+                if (epoch.get() != startEpoch) {
+                    continue;
+                }
+                long before = value.getAndSet(actual);
+                if (actual != before) {
+                    drift.put(counter.name(), actual - before);
+                }
+                return;
+            }
+        }
+        skipped.add(counter.name());
+    }
+}
@@ -0,0 +1,165 @@
+package space.kuikui.service.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import space.kuikui.service.entity.User;
+import space.kuikui.service.repository.UserRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 认证用户缓存
+ * 按用户ID缓存用户名、角色和启用状态，JWT过滤器不再每个请求查询 users 表。
+ * 用户被禁用或角色变更时立即失效，并在事务提交后再失效一次；
+ * 其他途径的修改最迟在缓存有效期后生效。
+ */
+@Component
+public class UserPrincipalCache {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${auth.principal-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${auth.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    private final ConcurrentHashMap<Long, Entry> byId = new ConcurrentHashMap<>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 根据用户ID获取认证信息，用户不存在时返回 null
+     */
+    public Principal get(Long userId) {
+        Entry entry = byId.get(userId);
+        if (entry != null && !entry.isExpired(ttlSeconds)) {
+            hitCount.increment();
+            return entry.principal;
+        }
+        missCount.increment();
+
+        long loadVersion = version.get();
+        User user = userRepository.selectById(userId);
+        if (user == null) {
+            byId.remove(userId);
+            return null;
+        }
+        Principal principal = new Principal(user.getId(), user.getUsername(), user.getRole(),
+                Boolean.TRUE.equals(user.getIsActive()));
+        // 加载期间发生过失效则不写入缓存
+        if (loadVersion == version.get()) {
+            if (byId.size() >= maxSize) {
+                evictExpired();
+                if (byId.size() >= maxSize) {
+                    byId.clear();
+                }
+            }
+            byId.put(userId, new Entry(principal));
+        }
+        return principal;
+    }
+
+    /**
+     * 用户状态或角色变化时调用
+     */
+    public void invalidate(Long userId) {
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public Map<String, Object> getStats() {
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hitCount", hits);
+        stats.put("missCount", misses);
+        stats.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        stats.put("cachedUsers", byId.size());
+        stats.put("ttlSeconds", ttlSeconds);
+        return stats;
+    }
+
+    private void evict(Long userId) {
+        version.incrementAndGet();
+        byId.remove(userId);
+    }
+
+    private void evictExpired() {
+        byId.values().removeIf(entry -> entry.isExpired(ttlSeconds));
+    }
+
+    /**
+     * 缓存的认证信息
+     */
+    public static class Principal {
+
+        private final Long userId;
+
+        private final String username;
+
+        private final String role;
+
+        private final boolean active;
+
+        Principal(Long userId, String username, String role, boolean active) {
+            this.userId = userId;
+            this.username = username;
+            this.role = role;
+            this.active = active;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+    private static class Entry {
+
+        private final Principal principal;
+
+        private final long loadedAt = System.currentTimeMillis();
+
+        Entry(Principal principal) {
+            this.principal = principal;
+        }
+
+        boolean isExpired(long ttlSeconds) {
+            return System.currentTimeMillis() - loadedAt > ttlSeconds * 1000;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package space.kuikui.service.service;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -10,7 +13,10 @@ import space.kuikui.service.util.JwtUtil;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @Service
 public class UserService {
@@ -24,6 +30,18 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private PasswordVerifier passwordVerifier;
+    
+    @Autowired
+    private LoginAttemptThrottle loginAttemptThrottle;
+    
+    @Autowired
+    private StatisticsService statisticsService;
+    
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+    
     /**
      * 用户注册
      */
@@ -62,6 +80,7 @@ public class UserService {
         
         // 保存用户
         userRepository.insert(user);
+        statisticsService.adjust(StatisticsService.Counter.TOTAL_USERS, 1);
         
         result.put("success", true);
         result.put("message", "注册成功");
@@ -72,38 +91,67 @@ public class UserService {
     
     /**
      * 用户登录
+     * 密码在独立的线程池中校验，登录过于频繁或校验队列已满时直接返回失败
      */
-    @Transactional
-    public Map<String, Object> login(String username, String password) {
+    public CompletableFuture<Map<String, Object>> login(String username, String password, String clientIp) {
         Map<String, Object> result = new HashMap<>();
         
+        if (username == null || password == null) {
+            result.put("success", false);
+            result.put("message", "用户名或密码错误");
+            return CompletableFuture.completedFuture(result);
+        }
+        
+        // 检查登录频率
+        long retryAfterSeconds = loginAttemptThrottle.tryAcquire(username, clientIp);
+        if (retryAfterSeconds > 0) {
+            result.put("success", false);
+            result.put("message", "登录尝试过于频繁，请 " + retryAfterSeconds + " 秒后再试");
+            return CompletableFuture.completedFuture(result);
+        }
+        
         // 查找用户
         User user = userRepository.findByUsernameAndIsActiveTrue(username);
         if (user == null) {
+            loginAttemptThrottle.recordFailure(username, clientIp);
             result.put("success", false);
             result.put("message", "用户名或密码错误");
-            return result;
+            return CompletableFuture.completedFuture(result);
         }
         
         // 验证密码
-        if (!passwordEncoder.matches(password, user.getPassword())) {
+        CompletableFuture<Boolean> matches;
+        try {
+            matches = passwordVerifier.matches(password, user.getPassword());
+        } catch (RejectedExecutionException e) {
             result.put("success", false);
-            result.put("message", "用户名或密码错误");
-            return result;
+            result.put("message", e.getMessage());
+            return CompletableFuture.completedFuture(result);
         }
         
-        // 更新最后登录时间
-        userRepository.updateLastLoginTime(user.getId(), LocalDateTime.now());
-        
-        // 生成JWT token
-        String token = jwtUtil.generateToken(user.getUsername(), user.getRole(), user.getId());
-        
-        result.put("success", true);
-        result.put("message", "登录成功");
-        result.put("token", token);
-        result.put("user", getUserInfo(user));
-        
-        return result;
+        // 后续的数据库写入不在校验线程中执行，避免数据库变慢时占用校验线程
+        return matches.thenApplyAsync(matched -> {
+            if (!matched) {
+                loginAttemptThrottle.recordFailure(username, clientIp);
+                result.put("success", false);
+                result.put("message", "用户名或密码错误");
+                return result;
+            }
+            loginAttemptThrottle.recordSuccess(username, clientIp);
+            
+            // 更新最后登录时间
+            userRepository.updateLastLoginTime(user.getId(), LocalDateTime.now());
+            
+            // 生成JWT token
+            String token = jwtUtil.generateToken(user.getUsername(), user.getRole(), user.getId());
+            
+            result.put("success", true);
+            result.put("message", "登录成功");
+            result.put("token", token);
+            result.put("user", getUserInfo(user));
+            
+            return result;
+        }, passwordVerifier.completionExecutor());
     }
     
     /**
@@ -120,6 +168,65 @@ public class UserService {
         return userRepository.selectById(id);
     }
     
+    /**
+     * 启用或禁用用户，已签发的token在认证缓存失效后随即不可用
+     */
+    @Transactional
+    public Map<String, Object> setUserActive(Long userId, boolean active) {
+        // 禁用前先锁定启用的管理员行，并发禁用不同管理员时后一个事务会看到前一个的结果
+        List<Long> activeAdminIds = active ? List.of() : userRepository.lockActiveAdminIds();
+        User user = userRepository.selectById(userId);
+        if (user == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        if (!active && activeAdminIds.contains(userId) && activeAdminIds.size() <= 1) {
+            throw new RuntimeException("不能禁用最后一个管理员");
+        }
+        
+        User update = new User();
+        update.setId(userId);
+        update.setRole(null);
+        update.setIsActive(active);
+        userRepository.updateById(update);
+        userPrincipalCache.invalidate(userId);
+        
+        user.setIsActive(active);
+        return getUserInfo(user);
+    }
+    
+    /**
+     * 修改用户角色（USER 或 ADMIN）
+     */
+    @Transactional
+    public Map<String, Object> changeUserRole(Long userId, String role) {
+        if (!"USER".equals(role) && !"ADMIN".equals(role)) {
+            throw new RuntimeException("无效的角色: " + role);
+        }
+        // 降级前先锁定启用的管理员行，并发降级不同管理员时后一个事务会看到前一个的结果
+        List<Long> activeAdminIds = "ADMIN".equals(role) ? List.of() : userRepository.lockActiveAdminIds();
+        User user = userRepository.selectById(userId);
+        if (user == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        if (role.equals(user.getRole())) {
+            return getUserInfo(user);
+        }
+        if (activeAdminIds.contains(userId) && activeAdminIds.size() <= 1) {
+            throw new RuntimeException("不能取消最后一个管理员的权限");
+        }
+        
+        User update = new User();
+        update.setId(userId);
+        update.setRole(role);
+        update.setIsActive(null);
+        userRepository.updateById(update);
+        userPrincipalCache.invalidate(userId);
+        statisticsService.adjust(StatisticsService.Counter.ADMIN_USERS, "ADMIN".equals(role) ? 1 : -1);
+        
+        user.setRole(role);
+        return getUserInfo(user);
+    }
+    
     /**
      * 获取用户信息（不包含密码）
      */
@@ -142,14 +249,20 @@ public class UserService {
     public Map<String, Object> validateTokenAndGetUser(String token) {
         Map<String, Object> result = new HashMap<>();
         
-        if (!jwtUtil.isValidToken(token)) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseToken(token);
+        } catch (ExpiredJwtException e) {
+            result.put("success", false);
+            result.put("message", "token已过期");
+            return result;
+        } catch (JwtException | IllegalArgumentException e) {
             result.put("success", false);
             result.put("message", "无效的token");
             return result;
         }
         
-        String username = jwtUtil.getUsernameFromToken(token);
-        User user = getUserByUsername(username);
+        User user = getUserByUsername(claims.getSubject());
         
         if (user == null) {
             result.put("success", false);
@@ -157,12 +270,6 @@ public class UserService {
             return result;
         }
         
-        if (jwtUtil.isTokenExpired(token)) {
-            result.put("success", false);
-            result.put("message", "token已过期");
-            return result;
-        }
-        
         result.put("success", true);
         result.put("user", getUserInfo(user));
         
@@ -192,6 +299,8 @@ public class UserService {
         
         // 保存管理员账户
         userRepository.insert(admin);
+        statisticsService.adjust(StatisticsService.Counter.TOTAL_USERS, 1);
+        statisticsService.adjust(StatisticsService.Counter.ADMIN_USERS, 1);
         
         System.out.println("默认管理员账户已创建：用户名=admin，密码=123456");
     }
@@ -0,0 +1,34 @@
+package space.kuikui.service.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.service.ArchiveService;
+
+import java.util.Map;
+
+/**
+ * 数据归档定时任务
+ * 每天凌晨将过期的已发货订单和已使用卡密移入归档表
+ */
+@Component
+@ConditionalOnProperty(name = "archive.enabled", havingValue = "true", matchIfMissing = true)
+public class ArchiveTask {
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    /**
+     * cron表达式可通过配置文件修改：archive.cron
+     */
+    @Scheduled(cron = "${archive.cron:0 30 4 * * *}")
+    public void archive() {
+        try {
+            Map<String, Object> report = archiveService.archive();
+            System.out.println("数据归档任务完成: " + report);
+        } catch (Exception e) {
+            System.err.println("数据归档任务执行失败: " + e.getMessage());
+        }
+    }
+}
@@ -12,7 +12,7 @@ import java.time.format.DateTimeFormatter;
 
 /**
  * 订单清理定时任务
- * 根据配置自动清理过期的未付款订单
+ * 根据配置自动删除过期的未付款订单（超时标记为已过期由 OrderExpiryScheduler 持续处理）
  */
 @Component
 @ConditionalOnProperty(name = "order.cleanup.enabled", havingValue = "true", matchIfMissing = true)
@@ -60,7 +60,7 @@ public class OrderCleanupTask {
         System.out.println("=== 订单清理任务配置 ===");
         System.out.println("自动清理: 已启用");
         System.out.println("清理时间: 每天凌晨2点");
-        System.out.println("清理条件: 超过 " + cleanupHours + " 小时的未付款订单");
+        System.out.println("清理条件: 超过 " + cleanupHours + " 小时的未付款订单（待支付和已过期）");
         System.out.println("提醒: 可通过 order.cleanup.enabled=false 禁用自动清理");
         System.out.println("========================");
     }
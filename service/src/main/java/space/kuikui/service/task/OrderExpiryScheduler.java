@@ -0,0 +1,217 @@
+package space.kuikui.service.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.entity.Order;
+import space.kuikui.service.repository.OrderRepository;
+import space.kuikui.service.service.OrderService;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单过期任务
+ * 在内存中按截止时间排队跟踪待支付订单，每秒取出到期的订单分批标记为已过期。
+ * 启动时从数据库重建队列；队列已满或多实例部署时漏掉的订单由定期的数据库补扫处理。
+ * 过期后的订单仍可确认支付，超过 order.cleanup.hours 后由清理任务删除。
+ */
+@Component
+public class OrderExpiryScheduler {
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Value("${order.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${order.expiry.minutes:30}")
+    private long expiryMinutes;
+
+    @Value("${order.expiry.batch-size:200}")
+    private int batchSize;
+
+    @Value("${order.expiry.max-tracked:100000}")
+    private int maxTracked;
+
+    private final DelayQueue<Deadline> queue = new DelayQueue<>();
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final LongAdder expiredCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private volatile Map<String, Object> lastSweep;
+
+    /**
+     * 开始跟踪一个待支付订单的截止时间
+     */
+    public void track(Order order) {
+        if (!enabled || order.getId() == null) {
+            return;
+        }
+        LocalDateTime createdAt = order.getCreatedAt() != null ? order.getCreatedAt() : LocalDateTime.now();
+        if (queue.size() >= maxTracked) {
+            // 超出部分由数据库补扫过期
+            droppedCount.increment();
+            return;
+        }
+        queue.offer(new Deadline(order, deadlineOf(createdAt)));
+    }
+
+    /**
+     * 启动时先补扫已经超时的订单，再加载尚未到期的订单
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        sweep();
+
+        LocalDateTime since = LocalDateTime.now().minusMinutes(expiryMinutes);
+        long lastId = 0;
+        int count = 0;
+        List<Order> batch;
+        do {
+            batch = orderRepository.findPendingOrdersSince(since, lastId, REBUILD_BATCH_SIZE);
+            for (Order order : batch) {
+                track(order);
+                lastId = order.getId();
+            }
+            count += batch.size();
+        } while (batch.size() == REBUILD_BATCH_SIZE && queue.size() < maxTracked);
+
+        System.out.println("订单过期任务: 已加载 " + count + " 个待支付订单");
+    }
+
+    @Scheduled(fixedDelayString = "${order.expiry.tick-ms:1000}")
+    public void tick() {
+        if (!enabled || queue.isEmpty()) {
+            return;
+        }
+        List<Deadline> due = new ArrayList<>();
+        while (queue.drainTo(due, batchSize) > 0) {
+            List<Order> orders = new ArrayList<>(due.size());
+            for (Deadline deadline : due) {
+                orders.add(deadline.order);
+            }
+            due.clear();
+            try {
+                expiredCount.add(orderService.expireOrders(orders));
+            } catch (Exception e) {
+                // 失败的订单留给数据库补扫
+                System.err.println("订单过期处理失败: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 从数据库补扫已超时但仍为待支付的订单
+     */
+    @Scheduled(fixedDelayString = "${order.expiry.sweep-interval-ms:300000}", initialDelayString = "${order.expiry.sweep-interval-ms:300000}")
+    public void sweep() {
+        if (!enabled || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int expired = 0;
+        try {
+            LocalDateTime cutoffTime = LocalDateTime.now().minusMinutes(expiryMinutes);
+            LocalDateTime afterCreatedAt = null;
+            Long afterId = null;
+            List<Order> batch;
+            do {
+                batch = orderRepository.findUnpaidOrdersBefore(Order.OrderStatus.PENDING.name(), cutoffTime,
+                        afterCreatedAt, afterId, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                Order last = batch.get(batch.size() - 1);
+                afterCreatedAt = last.getCreatedAt();
+                afterId = last.getId();
+                expired += orderService.expireOrders(batch);
+            } while (batch.size() == batchSize);
+        } catch (Exception e) {
+            System.err.println("订单过期补扫失败: " + e.getMessage());
+        } finally {
+            sweeping.set(false);
+        }
+        expiredCount.add(expired);
+
+        Map<String, Object> report = new HashMap<>();
+        report.put("finishedAt", LocalDateTime.now());
+        report.put("expiredCount", expired);
+        report.put("elapsedMs", System.currentTimeMillis() - startTime);
+        lastSweep = report;
+        if (expired > 0) {
+            System.out.println("订单过期补扫: 标记 " + expired + " 个超时订单为已过期");
+        }
+    }
+
+    /**
+     * 过期任务状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("expiryMinutes", expiryMinutes);
+        stats.put("trackedOrders", queue.size());
+        stats.put("expiredCount", expiredCount.sum());
+        stats.put("droppedCount", droppedCount.sum());
+        stats.put("lastSweep", lastSweep);
+        return stats;
+    }
+
+    private long deadlineOf(LocalDateTime createdAt) {
+        return createdAt.plusMinutes(expiryMinutes).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 订单截止时间
+     */
+    private static class Deadline implements Delayed {
+
+        private final Order order;
+
+        private final long expiresAt;
+
+        Deadline(Order order, long expiresAt) {
+            Order key = new Order();
+            key.setId(order.getId());
+            key.setOrderId(order.getOrderId());
+            key.setQueryKey(order.getQueryKey());
+            this.order = key;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiresAt, ((Deadline) other).expiresAt);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package space.kuikui.service.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.entity.Order;
+import space.kuikui.service.repository.OrderRepository;
+import space.kuikui.service.service.OrderService;
+import space.kuikui.service.service.PaymentGatewayClient;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 支付确认轮询任务
+ * 在内存中按下次轮询时间排队跟踪待支付订单，每轮只取出到期的订单并按批次向网关查询，
+ * 新订单轮询频繁、老订单逐渐降低频率。确认支付的订单交给 OrderService 发货。
+ */
+@Component
+public class PaymentConfirmationPoller {
+
+    // 订单年龄 -> 轮询间隔（秒）
+    private static final long[][] BACKOFF_TIERS = {
+            { TimeUnit.MINUTES.toSeconds(2), 5 },
+            { TimeUnit.MINUTES.toSeconds(10), 15 },
+            { TimeUnit.HOURS.toSeconds(1), 60 },
+            { TimeUnit.HOURS.toSeconds(6), 300 },
+    };
+
+    private static final long MAX_INTERVAL_SECONDS = 900;
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Autowired
+    private PaymentGatewayClient paymentGatewayClient;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Value("${payment.confirm.enabled:true}")
+    private boolean enabled;
+
+    @Value("${payment.confirm.batch-size:50}")
+    private int batchSize;
+
+    @Value("${payment.confirm.max-per-tick:2000}")
+    private int maxPerTick;
+
+    @Value("${payment.confirm.max-age-hours:24}")
+    private int maxAgeHours;
+
+    @Value("${payment.confirm.paid-statuses:paid,success,1}")
+    private String paidStatuses;
+
+    private Set<String> paidStatusSet;
+
+    private final DelayQueue<TrackedOrder> queue = new DelayQueue<>();
+
+    // 订单号 -> 当前有效的排队项，用于去重和取消跟踪
+    private final ConcurrentHashMap<String, TrackedOrder> tracked = new ConcurrentHashMap<>();
+
+    // 上一轮的网关查询是否仍在进行
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    private final LongAdder queryCount = new LongAdder();
+
+    private final LongAdder confirmedCount = new LongAdder();
+
+    /**
+     * 开始跟踪一个待支付订单
+     */
+    public void track(Order order) {
+        if (!enabled || order.getOrderId() == null) {
+            return;
+        }
+        long createdAt = order.getCreatedAt() != null
+                ? order.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : System.currentTimeMillis();
+        schedule(new TrackedOrder(order.getOrderId(), createdAt, System.currentTimeMillis()));
+    }
+
+    /**
+     * 停止跟踪（订单已通过其他途径确认或取消）
+     */
+    public void untrack(String orderId) {
+        tracked.remove(orderId);
+    }
+
+    /**
+     * 启动时从数据库重建未支付订单（待支付和已过期）的跟踪队列
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        paidStatusSet();
+
+        LocalDateTime since = LocalDateTime.now().minusHours(maxAgeHours);
+        long lastId = 0;
+        int count = 0;
+        List<Order> batch;
+        do {
+            batch = orderRepository.findUnpaidOrdersSince(since, lastId, REBUILD_BATCH_SIZE);
+            for (Order order : batch) {
+                track(order);
+                lastId = order.getId();
+            }
+            count += batch.size();
+        } while (batch.size() == REBUILD_BATCH_SIZE);
+
+        System.out.println("支付确认轮询: 已加载 " + count + " 个未支付订单");
+    }
+
+    /**
+     * 取出到期的订单发起查询后立即返回，不在调度线程上等待网关响应；上一轮查询未完成时跳过本轮
+     */
+    @Scheduled(fixedDelayString = "${payment.confirm.tick-ms:2000}")
+    public void poll() {
+        if (!enabled || queue.isEmpty() || !polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            startRound();
+        } catch (RuntimeException e) {
+            polling.set(false);
+            throw e;
+        }
+    }
+
+    private void startRound() {
+
+        List<TrackedOrder> due = new ArrayList<>();
+        queue.drainTo(due, maxPerTick);
+
+        long now = System.currentTimeMillis();
+        long maxAgeMs = TimeUnit.HOURS.toMillis(maxAgeHours);
+        List<TrackedOrder> active = new ArrayList<>();
+        for (TrackedOrder order : due) {
+            // 已取消跟踪或被重新排队的旧项直接丢弃
+            if (tracked.get(order.orderId) != order) {
+                continue;
+            }
+            if (now - order.createdAt > maxAgeMs) {
+                tracked.remove(order.orderId, order);
+                continue;
+            }
+            active.add(order);
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < active.size(); i += batchSize) {
+            List<TrackedOrder> batch = active.subList(i, Math.min(i + batchSize, active.size()));
+            futures.add(queryBatch(batch));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> polling.set(false));
+    }
+
+    private CompletableFuture<Void> queryBatch(List<TrackedOrder> batch) {
+        List<String> orderIds = new ArrayList<>(batch.size());
+        for (TrackedOrder order : batch) {
+            orderIds.add(order.orderId);
+        }
+        queryCount.increment();
+
+        return paymentGatewayClient.queryPaymentsAsync(orderIds)
+                .exceptionally(e -> {
+                    System.err.println("支付确认查询失败: " + e.getMessage());
+                    return new HashMap<>();
+                })
+                // 确认支付会写数据库，在独立的执行器中进行
+                .thenAcceptAsync(statuses -> {
+                    for (TrackedOrder order : batch) {
+                        String status = statuses.get(order.orderId);
+                        if (status != null && paidStatusSet().contains(status.toLowerCase())) {
+                            confirm(order);
+                        } else {
+                            schedule(new TrackedOrder(order.orderId, order.createdAt, nextPollAt(order.createdAt)));
+                        }
+                    }
+                }, paymentGatewayClient.completionExecutor());
+    }
+
+    private void confirm(TrackedOrder order) {
+        tracked.remove(order.orderId, order);
+        try {
+            if (orderService.confirmPayment(order.orderId)) {
+                confirmedCount.increment();
+            }
+        } catch (Exception e) {
+            System.err.println("订单支付确认失败: " + order.orderId + "，" + e.getMessage());
+            schedule(new TrackedOrder(order.orderId, order.createdAt, nextPollAt(order.createdAt)));
+        }
+    }
+
+    private void schedule(TrackedOrder order) {
+        tracked.put(order.orderId, order);
+        queue.offer(order);
+    }
+
+    /**
+     * 根据订单年龄计算下次轮询时间
+     */
+    private static long nextPollAt(long createdAt) {
+        long now = System.currentTimeMillis();
+        long ageSeconds = (now - createdAt) / 1000;
+        long intervalSeconds = MAX_INTERVAL_SECONDS;
+        for (long[] tier : BACKOFF_TIERS) {
+            if (ageSeconds < tier[0]) {
+                intervalSeconds = tier[1];
+                break;
+            }
+        }
+        return now + intervalSeconds * 1000;
+    }
+
+    private Set<String> paidStatusSet() {
+        if (paidStatusSet == null) {
+            Set<String> statuses = new HashSet<>();
+            Arrays.stream(paidStatuses.split(",")).map(String::trim).map(String::toLowerCase).forEach(statuses::add);
+            paidStatusSet = statuses;
+        }
+        return paidStatusSet;
+    }
+
+    /**
+     * 轮询状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedOrders", tracked.size());
+        stats.put("queuedEntries", queue.size());
+        stats.put("gatewayQueries", queryCount.sum());
+        stats.put("confirmedOrders", confirmedCount.sum());
+        stats.put("polling", polling.get());
+        return stats;
+    }
+
+    /**
+     * 排队中的订单
+     */
+    private static class TrackedOrder implements Delayed {
+
+        private final String orderId;
+
+        private final long createdAt;
+
+        private final long nextPollAt;
+
+        TrackedOrder(String orderId, long createdAt, long nextPollAt) {
+            this.orderId = orderId;
+            this.createdAt = createdAt;
+            this.nextPollAt = nextPollAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextPollAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(nextPollAt, ((TrackedOrder) other).nextPollAt);
+        }
+    }
+}
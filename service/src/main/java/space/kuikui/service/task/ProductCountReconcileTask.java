@@ -0,0 +1,29 @@
+package space.kuikui.service.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import space.kuikui.service.service.ProductService;
+
+/**
+ * 商品卡密数量对账任务
+ * card_count / sold_count 平时按增量更新，定期与卡密表核对一次
+ */
+@Component
+public class ProductCountReconcileTask {
+    
+    @Autowired
+    private ProductService productService;
+    
+    @Scheduled(cron = "${product.count-reconcile.cron:0 30 3 * * *}")
+    public void reconcileCardCounts() {
+        try {
+            long startTime = System.currentTimeMillis();
+            int corrected = productService.reconcileCardCounts();
+            System.out.println(String.format("商品卡密数量对账完成，修正 %d 个商品，耗时 %d ms",
+                    corrected, System.currentTimeMillis() - startTime));
+        } catch (Exception e) {
+            System.err.println("商品卡密数量对账失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package space.kuikui.service.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程池工厂
+ * 运行在JDK 21及以上且选择虚拟线程模式时使用虚拟线程，否则使用固定大小的平台线程池。
+ * 项目以Java 17编译，因此通过反射获取虚拟线程执行器。
+ */
+public final class ExecutorFactory {
+
+    private ExecutorFactory() {
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建执行器
+     * @param name 平台线程名前缀
+     * @param platformThreads 平台线程模式下的线程数
+     * @param virtual 是否优先使用虚拟线程
+     */
+    public static ExecutorService newExecutor(String name, int platformThreads, boolean virtual) {
+        if (virtual) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("当前JVM不支持虚拟线程，" + name + " 使用平台线程池");
+            }
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(platformThreads, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -2,14 +2,25 @@ package space.kuikui.service.util;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * JWT工具类
+ * 签名密钥和解析器只创建一次；验证通过的token按其SHA-256摘要缓存解析结果，
+ * 缓存项在token过期时失效，同一token的后续请求不再重复验证签名。
+ */
 @Component
 public class JwtUtil {
     
@@ -19,8 +30,25 @@ public class JwtUtil {
     @Value("${jwt.expiration:86400000}") // 24小时
     private Long expiration;
     
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+    
+    private SecretKey signingKey;
+    
+    private JwtParser parser;
+    
+    private final ConcurrentHashMap<String, CachedClaims> claimsCache = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+    
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+        return signingKey;
     }
     
     /**
@@ -79,11 +107,52 @@ public class JwtUtil {
     }
     
     private Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parseToken(token);
+    }
+    
+    /**
+     * 验证token并返回全部声明，签名无效或已过期时抛出 JwtException
+     */
+    public Claims parseToken(String token) {
+        String key = hash(token);
+        CachedClaims cached = claimsCache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt > System.currentTimeMillis()) {
+                return cached.claims;
+            }
+            // 已过期，移除后交给解析器抛出过期异常
+            claimsCache.remove(key);
+        }
+        
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Date expirationDate = claims.getExpiration();
+        if (expirationDate != null) {
+            if (claimsCache.size() >= cacheMaxSize) {
+                evictExpired();
+                if (claimsCache.size() >= cacheMaxSize) {
+                    claimsCache.clear();
+                }
+            }
+            claimsCache.put(key, new CachedClaims(claims, expirationDate.getTime()));
+        }
+        return claims;
+    }
+    
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        claimsCache.values().removeIf(cached -> cached.expiresAt <= now);
+    }
+    
+    private static String hash(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
     
     /**
@@ -107,13 +176,22 @@ public class JwtUtil {
      */
     public Boolean isValidToken(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
+            parseToken(token);
             return true;
         } catch (JwtException | IllegalArgumentException e) {
             return false;
         }
     }
+    
+    private static class CachedClaims {
+        
+        private final Claims claims;
+        
+        private final long expiresAt;
+        
+        CachedClaims(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
 } 
\ No newline at end of file
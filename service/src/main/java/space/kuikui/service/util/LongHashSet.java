@@ -0,0 +1,103 @@
+package space.kuikui.service.util;
+
+/**
+ * 基于开放寻址的long集合
+ * 每个元素只占8字节，用于大文件导入时按64位哈希在内存中去重
+ */
+public class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] table;
+
+    private int size;
+
+    private boolean containsZero;
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        table = new long[capacity];
+    }
+
+    /**
+     * 添加元素，元素已存在时返回false
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        if (size + 1 > table.length * LOAD_FACTOR) {
+            resize();
+        }
+        if (!insert(table, value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        int index = mix(value) & mask;
+        while (table[index] != 0) {
+            if (table[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static boolean insert(long[] target, long value) {
+        int mask = target.length - 1;
+        int index = mix(value) & mask;
+        while (target[index] != 0) {
+            if (target[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        target[index] = value;
+        return true;
+    }
+
+    private void resize() {
+        long[] newTable = new long[table.length << 1];
+        for (long value : table) {
+            if (value != 0) {
+                insert(newTable, value);
+            }
+        }
+        table = newTable;
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 计算字符串的64位FNV-1a哈希
+     */
+    public static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -33,11 +33,76 @@ CREATE TABLE `card_codes`  (
   PRIMARY KEY (`id`) USING BTREE,
   UNIQUE INDEX `code`(`code`) USING BTREE,
   INDEX `idx_product_id`(`product_id`) USING BTREE,
+  INDEX `idx_product_is_used`(`product_id`, `is_used`) USING BTREE,
   INDEX `idx_is_used`(`is_used`) USING BTREE,
   INDEX `idx_code`(`code`) USING BTREE,
   CONSTRAINT `card_codes_ibfk_1` FOREIGN KEY (`product_id`) REFERENCES `products` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for card_codes_archive
+-- ----------------------------
+DROP TABLE IF EXISTS `card_codes_archive`;
+CREATE TABLE `card_codes_archive`  (
+  `id` bigint(0) NOT NULL,
+  `code` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL,
+  `product_id` bigint(0) NOT NULL,
+  `is_used` tinyint(1) NULL DEFAULT 0,
+  `used_at` timestamp(0) NULL DEFAULT NULL,
+  `order_id` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL,
+  `created_at` timestamp(0) NULL DEFAULT NULL,
+  `updated_at` timestamp(0) NULL DEFAULT NULL,
+  `archived_at` timestamp(0) NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `code`(`code`) USING BTREE,
+  INDEX `idx_product_id`(`product_id`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '已使用卡密归档表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for card_code_jobs
+-- ----------------------------
+DROP TABLE IF EXISTS `card_code_jobs`;
+CREATE TABLE `card_code_jobs`  (
+  `id` bigint(0) NOT NULL AUTO_INCREMENT,
+  `job_id` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL,
+  `job_type` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '任务类型：IMPORT/GENERATE',
+  `product_id` bigint(0) NOT NULL,
+  `status` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'QUEUED' COMMENT '任务状态：QUEUED/RUNNING/COMPLETED/FAILED',
+  `source_file` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '导入文件暂存路径',
+  `prefix` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '生成卡密前缀',
+  `total_count` bigint(0) NULL DEFAULT 0 COMMENT '生成任务目标数量',
+  `processed_count` bigint(0) NULL DEFAULT 0 COMMENT '已提交进度：导入为行数，生成为数量',
+  `inserted_count` bigint(0) NULL DEFAULT 0,
+  `skipped_count` bigint(0) NULL DEFAULT 0,
+  `error_message` varchar(1000) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL,
+  `started_at` timestamp(0) NULL DEFAULT NULL,
+  `finished_at` timestamp(0) NULL DEFAULT NULL,
+  `created_at` timestamp(0) NULL DEFAULT CURRENT_TIMESTAMP,
+  `updated_at` timestamp(0) NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP(0),
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `job_id`(`job_id`) USING BTREE,
+  INDEX `idx_status`(`status`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '卡密导入/生成任务表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for payment_notifications
+-- ----------------------------
+DROP TABLE IF EXISTS `payment_notifications`;
+CREATE TABLE `payment_notifications`  (
+  `id` bigint(0) NOT NULL AUTO_INCREMENT,
+  `oid` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '支付网关订单号',
+  `gateway_status` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '回调中的支付状态',
+  `payload` varchar(2000) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '回调原始内容',
+  `process_status` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'RECEIVED' COMMENT '处理状态：RECEIVED/PROCESSED/IGNORED',
+  `attempts` int(0) NULL DEFAULT 0 COMMENT '处理次数',
+  `next_attempt_at` timestamp(0) NULL DEFAULT NULL COMMENT '下次重试时间（网关尚未确认支付或处理失败时按次数退避）',
+  `processed_at` timestamp(0) NULL DEFAULT NULL,
+  `created_at` timestamp(0) NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `oid`(`oid`) USING BTREE,
+  INDEX `idx_process_status`(`process_status`, `created_at`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '支付回调记录表' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for orders
 -- ----------------------------
@@ -63,9 +128,37 @@ CREATE TABLE `orders`  (
   INDEX `idx_status`(`status`) USING BTREE,
   INDEX `idx_is_delivered`(`is_delivered`) USING BTREE,
   INDEX `idx_query_key`(`query_key`) USING BTREE,
+  INDEX `idx_created_at_id`(`created_at`, `id`) USING BTREE,
+  INDEX `idx_status_created_at_id`(`status`, `created_at`, `id`) USING BTREE,
   CONSTRAINT `orders_ibfk_1` FOREIGN KEY (`product_id`) REFERENCES `products` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for orders_archive
+-- ----------------------------
+DROP TABLE IF EXISTS `orders_archive`;
+CREATE TABLE `orders_archive`  (
+  `id` bigint(0) NOT NULL,
+  `order_id` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL,
+  `product_id` bigint(0) NOT NULL,
+  `amount` decimal(10, 2) NOT NULL,
+  `payment_type` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL,
+  `wallet_address` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL,
+  `query_key` varchar(100) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '用户自定义查询密钥',
+  `status` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL,
+  `is_delivered` tinyint(1) NULL DEFAULT NULL,
+  `delivered_card_code` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL,
+  `delivered_at` timestamp(0) NULL DEFAULT NULL,
+  `created_at` timestamp(0) NULL DEFAULT NULL,
+  `updated_at` timestamp(0) NULL DEFAULT NULL,
+  `archived_at` timestamp(0) NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `order_id`(`order_id`) USING BTREE,
+  INDEX `idx_product_id`(`product_id`) USING BTREE,
+  INDEX `idx_query_key_created_at`(`query_key`, `created_at`) USING BTREE,
+  INDEX `idx_created_at_id`(`created_at`, `id`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '已发货订单归档表' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for products
 -- ----------------------------
@@ -85,6 +178,23 @@ CREATE TABLE `products`  (
   UNIQUE INDEX `name`(`name`) USING BTREE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for sales_rollups
+-- ----------------------------
+DROP TABLE IF EXISTS `sales_rollups`;
+CREATE TABLE `sales_rollups`  (
+  `id` bigint(0) NOT NULL AUTO_INCREMENT,
+  `bucket_type` varchar(10) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '时间粒度：MINUTE/HOUR/DAY',
+  `bucket_start` timestamp(0) NOT NULL COMMENT '时间桶起点（订单创建时间）',
+  `product_id` bigint(0) NOT NULL,
+  `payment_type` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL,
+  `order_count` bigint(0) NOT NULL DEFAULT 0 COMMENT '已支付订单数',
+  `revenue` decimal(18, 2) NOT NULL DEFAULT 0.00 COMMENT '销售额',
+  `updated_at` timestamp(0) NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP(0),
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_bucket`(`bucket_type`, `bucket_start`, `product_id`, `payment_type`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '销售统计汇总表' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for users
 -- ----------------------------
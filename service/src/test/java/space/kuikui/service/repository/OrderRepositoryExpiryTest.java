@@ -0,0 +1,125 @@
+package space.kuikui.service.repository;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import space.kuikui.service.entity.Order;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 订单过期相关SQL（H2内存库）
+ */
+class OrderRepositoryExpiryTest {
+
+    private SqlSession session;
+
+    private OrderRepository orderRepository;
+
+    private final LocalDateTime createdAt = LocalDateTime.now().minusHours(2);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisConfiguration configuration = new MybatisConfiguration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addMapper(OrderRepository.class);
+        session = new MybatisSqlSessionFactoryBuilder().build(configuration).openSession(true);
+        orderRepository = session.getMapper(OrderRepository.class);
+
+        Connection connection = session.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE orders (" +
+                    "id BIGINT PRIMARY KEY, order_id VARCHAR(255) NOT NULL, product_id BIGINT NOT NULL, " +
+                    "amount DECIMAL(10, 2) NOT NULL, payment_type VARCHAR(50) NOT NULL, wallet_address VARCHAR(255), " +
+                    "query_key VARCHAR(100), status VARCHAR(50), is_delivered BOOLEAN DEFAULT FALSE, " +
+                    "delivered_card_code VARCHAR(255), delivered_at TIMESTAMP, created_at TIMESTAMP, updated_at TIMESTAMP)");
+        }
+        insert(connection, 1, "PENDING");
+        insert(connection, 2, "PAID");
+        insert(connection, 3, "EXPIRED");
+        insert(connection, 4, "DELIVERED");
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.close();
+    }
+
+    /**
+     * 只有仍为待支付的订单被标记为已过期，期间已支付或已发货的订单不受影响
+     */
+    @Test
+    void markExpiredByIdsOnlyFlipsPendingOrders() {
+        assertEquals(1, orderRepository.markExpiredByIds(List.of(1L, 2L, 3L, 4L)));
+
+        assertEquals(Order.OrderStatus.EXPIRED, orderRepository.findByOrderId("order-1").getStatus());
+        assertEquals(Order.OrderStatus.PAID, orderRepository.findByOrderId("order-2").getStatus());
+        assertEquals(Order.OrderStatus.EXPIRED, orderRepository.findByOrderId("order-3").getStatus());
+        assertEquals(Order.OrderStatus.DELIVERED, orderRepository.findByOrderId("order-4").getStatus());
+    }
+
+    /**
+     * 过期前只锁定仍为待支付的订单
+     */
+    @Test
+    void lockPendingByIdsReturnsOnlyPendingOrders() {
+        assertEquals(List.of(1L), ids(orderRepository.lockPendingByIds(List.of(1L, 2L, 3L, 4L))));
+        assertEquals("order-1", orderRepository.lockPendingByIds(List.of(1L)).get(0).getOrderId());
+    }
+
+    /**
+     * 已过期的订单仍可确认支付，且只会确认一次
+     */
+    @Test
+    void expiredOrderCanStillBeMarkedPaidOnce() {
+        assertEquals(1, orderRepository.markPaid(3L));
+        assertEquals(Order.OrderStatus.PAID, orderRepository.findByOrderId("order-3").getStatus());
+        assertEquals(0, orderRepository.markPaid(3L));
+        assertEquals(0, orderRepository.markPaid(4L));
+    }
+
+    /**
+     * 支付确认轮询重建时包括已过期的订单，订单过期任务重建时只加载待支付的订单
+     */
+    @Test
+    void pollerRebuildIncludesExpiredOrders() {
+        LocalDateTime since = LocalDateTime.now().minusHours(24);
+
+        assertEquals(List.of(1L, 3L), ids(orderRepository.findUnpaidOrdersSince(since, 0, 100)));
+        assertEquals(List.of(1L), ids(orderRepository.findPendingOrdersSince(since, 0, 100)));
+    }
+
+    private void insert(Connection connection, long id, String status) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO orders (id, order_id, product_id, amount, payment_type, query_key, status, is_delivered, created_at) " +
+                        "VALUES (?, ?, 1, 10.00, 'usdt', 'key', ?, ?, ?)")) {
+            statement.setLong(1, id);
+            statement.setString(2, "order-" + id);
+            statement.setString(3, status);
+            statement.setBoolean(4, "DELIVERED".equals(status));
+            statement.setTimestamp(5, Timestamp.valueOf(createdAt));
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<Long> ids(List<Order> orders) {
+        return orders.stream().map(Order::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,257 @@
+package space.kuikui.service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.kuikui.service.entity.Order;
+import space.kuikui.service.entity.Product;
+import space.kuikui.service.repository.CardCodeRepository;
+import space.kuikui.service.repository.OrderRepository;
+import space.kuikui.service.repository.ProductRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderServiceTest {
+
+    private static final int PRODUCT_COUNT = 5;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private CardCodeRepository cardCodeRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ProductCatalogCache productCatalogCache;
+
+    @InjectMocks
+    private ProductService productService;
+
+    private QueryKeyResultCache queryKeyResultCache;
+
+    private OrderService orderService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(productCatalogCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(productCatalogCache, "maxSize", 1000);
+        ReflectionTestUtils.setField(productService, "productCatalogCache", productCatalogCache);
+
+        queryKeyResultCache = new QueryKeyResultCache();
+        ReflectionTestUtils.setField(queryKeyResultCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(queryKeyResultCache, "maxSize", 1000);
+
+        orderService = new OrderService();
+        ReflectionTestUtils.setField(orderService, "orderRepository", orderRepository);
+        ReflectionTestUtils.setField(orderService, "productService", productService);
+        ReflectionTestUtils.setField(orderService, "queryKeyResultCache", queryKeyResultCache);
+        ReflectionTestUtils.setField(orderService, "orderEventRegistry", new OrderEventRegistry());
+
+        lenient().when(productRepository.selectBatchIds(any())).thenAnswer(invocation -> {
+            List<Product> products = new ArrayList<>();
+            for (Object id : (Collection<?>) invocation.getArgument(0)) {
+                Product product = new Product();
+                product.setId((Long) id);
+                product.setName("商品" + id);
+                products.add(product);
+            }
+            return products;
+        });
+    }
+
+    /**
+     * 订单列表的商品查询次数不随每页订单数量增加
+     */
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 10, 100 })
+    void getOrdersListLoadsProductsWithSingleQuery(int pageSize) {
+        when(orderRepository.findOrdersWithPagination(isNull(), anyInt(), anyInt())).thenReturn(orders(pageSize));
+        when(orderRepository.countOrders(isNull())).thenReturn(pageSize);
+
+        Map<String, Object> result = orderService.getOrdersList(1, pageSize, null);
+
+        @SuppressWarnings("unchecked")
+        List<Order> orders = (List<Order>) result.get("orders");
+        assertEquals(pageSize, orders.size());
+        for (Order order : orders) {
+            assertNotNull(order.getProduct());
+            assertEquals(order.getProductId(), order.getProduct().getId());
+        }
+
+        verify(productRepository, times(1)).selectBatchIds(any());
+        verifyNoMoreInteractions(productRepository);
+    }
+
+    /**
+     * 游标分页：nextCursor 指向本页最后一条，总数在缓存期内只统计一次
+     */
+    @Test
+    void getOrdersPageFollowsCursorAndCachesTotal() {
+        ReflectionTestUtils.setField(orderService, "countCacheSeconds", 30L);
+        List<Order> firstPage = orders(3);
+        when(orderRepository.findOrdersBeforeCursor(isNull(), isNull(), isNull(), eq(3))).thenReturn(firstPage);
+        when(orderRepository.findOrdersBeforeCursor(isNull(), eq(firstPage.get(1).getCreatedAt()), eq(2L), eq(3)))
+                .thenReturn(orders(1));
+        when(orderRepository.countOrders(isNull())).thenReturn(3);
+
+        Map<String, Object> first = orderService.getOrdersPage(null, 2, null);
+        assertEquals(2, ((List<?>) first.get("orders")).size());
+        assertEquals(true, first.get("hasMore"));
+
+        Map<String, Object> second = orderService.getOrdersPage((String) first.get("nextCursor"), 2, null);
+        assertEquals(1, ((List<?>) second.get("orders")).size());
+        assertEquals(false, second.get("hasMore"));
+        assertNull(second.get("nextCursor"));
+        assertEquals(3L, second.get("total"));
+
+        verify(orderRepository, times(1)).countOrders(isNull());
+    }
+
+    /**
+     * 查询密钥结果：超过上限时截断，命中缓存时不再查询，失效后重新加载
+     */
+    @Test
+    void getRecentOrdersByQueryKeyCapsAndCachesUntilInvalidated() {
+        ReflectionTestUtils.setField(orderService, "queryKeyMaxOrders", 2);
+        when(orderRepository.findRecentByQueryKey("key", 3)).thenReturn(orders(3));
+
+        QueryKeyResultCache.Result first = orderService.getRecentOrdersByQueryKey("key");
+        assertEquals(2, first.getOrders().size());
+        assertTrue(first.isTruncated());
+        assertNotNull(first.getOrders().get(0).getProduct());
+
+        assertSame(first, orderService.getRecentOrdersByQueryKey("key"));
+        verify(orderRepository, times(1)).findRecentByQueryKey("key", 3);
+
+        queryKeyResultCache.invalidate("key");
+        orderService.getRecentOrdersByQueryKey("key");
+        verify(orderRepository, times(2)).findRecentByQueryKey("key", 3);
+    }
+
+    /**
+     * 查询密钥结果：订单表中不足上限时用归档订单补足，按创建时间倒序合并
+     */
+    @Test
+    void getRecentOrdersByQueryKeyTopsUpFromArchive() {
+        ReflectionTestUtils.setField(orderService, "queryKeyMaxOrders", 3);
+        List<Order> all = orders(4);
+        when(orderRepository.findRecentByQueryKey("key", 4)).thenReturn(new ArrayList<>(List.of(all.get(0), all.get(2))));
+        when(orderRepository.findRecentArchivedByQueryKey("key", 2)).thenReturn(List.of(all.get(1), all.get(3)));
+
+        QueryKeyResultCache.Result result = orderService.getRecentOrdersByQueryKey("key");
+        assertEquals(3, result.getOrders().size());
+        assertTrue(result.isTruncated());
+        assertEquals(List.of(1L, 2L, 3L), result.getOrders().stream().map(Order::getId).toList());
+    }
+
+    /**
+     * 订单过期：只标记锁定时仍为待支付的订单，有订单过期时失效其查询密钥的缓存结果
+     */
+    @Test
+    void expireOrdersMarksByIdsAndInvalidatesQueryKeys() {
+        List<Order> due = orders(3);
+        for (Order order : due) {
+            order.setQueryKey("key");
+        }
+        when(orderRepository.findRecentByQueryKey(eq("key"), anyInt())).thenReturn(new ArrayList<>(due));
+        QueryKeyResultCache.Result cached = orderService.getRecentOrdersByQueryKey("key");
+        when(orderRepository.lockPendingByIds(List.of(1L, 2L, 3L))).thenReturn(new ArrayList<>(due.subList(0, 2)));
+        when(orderRepository.markExpiredByIds(List.of(1L, 2L))).thenReturn(2);
+
+        assertEquals(2, orderService.expireOrders(due));
+        assertEquals(0, orderService.expireOrders(new ArrayList<>()));
+
+        assertTrue(cached != orderService.getRecentOrdersByQueryKey("key"));
+        assertEquals(Order.OrderStatus.EXPIRED, due.get(0).getStatus());
+        verify(orderRepository, times(1)).markExpiredByIds(any());
+    }
+
+    /**
+     * 订单过期：锁定时已没有待支付的订单则不再更新
+     */
+    @Test
+    void expireOrdersSkipsUpdateWhenNothingIsPending() {
+        when(orderRepository.lockPendingByIds(List.of(1L, 2L))).thenReturn(new ArrayList<>());
+
+        assertEquals(0, orderService.expireOrders(orders(2)));
+        verify(orderRepository, never()).markExpiredByIds(any());
+    }
+
+    /**
+     * 清理未付款订单：按状态分别扫描，按游标分批删除，最后一批不足一批时结束
+     */
+    @Test
+    void cleanupUnpaidOrdersDeletesInKeysetChunks() {
+        StatisticsService statisticsService = new StatisticsService();
+        ReflectionTestUtils.setField(orderService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(orderService, "statisticsService", statisticsService);
+        ReflectionTestUtils.setField(orderService, "cleanupChunkSize", 2);
+        ReflectionTestUtils.setField(orderService, "cleanupPauseMs", 0L);
+        ReflectionTestUtils.setField(orderService, "cleanupTimeBudgetMs", 60000L);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+
+        List<Order> expired = orders(3);
+        when(orderRepository.findUnpaidOrdersBefore(eq("EXPIRED"), any(), isNull(), isNull(), eq(2)))
+                .thenReturn(new ArrayList<>());
+        when(orderRepository.findUnpaidOrdersBefore(eq("PENDING"), any(), isNull(), isNull(), eq(2)))
+                .thenReturn(expired.subList(0, 2));
+        when(orderRepository.findUnpaidOrdersBefore(eq("PENDING"), any(), eq(expired.get(1).getCreatedAt()), eq(2L), eq(2)))
+                .thenReturn(expired.subList(2, 3));
+        when(orderRepository.deleteByIdsAndStatus(any(), eq("PENDING")))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+
+        assertEquals(3, orderService.cleanupUnpaidOrders(24));
+        assertEquals(-3L, statisticsService.get(StatisticsService.Counter.TOTAL_ORDERS));
+        assertEquals(2, orderService.getLastCleanupReport().get("chunks"));
+        verify(orderRepository, times(2)).deleteByIdsAndStatus(any(), eq("PENDING"));
+    }
+
+    private static List<Order> orders(int count) {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setId((long) i + 1);
+            order.setOrderId("order-" + i);
+            order.setProductId((long) (i % PRODUCT_COUNT) + 1);
+            order.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0).minusMinutes(i));
+            orders.add(order);
+        }
+        return orders;
+    }
+}
@@ -0,0 +1,75 @@
+package space.kuikui.service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import space.kuikui.service.util.CircuitBreaker;
+
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymentGatewayClientTest {
+
+    private PaymentGatewayClient client;
+
+    private CircuitBreaker circuitBreaker;
+
+    private Semaphore permits;
+
+    @BeforeEach
+    void setUp() {
+        client = new PaymentGatewayClient();
+        ReflectionTestUtils.setField(client, "apiBaseUrl", "http://127.0.0.1:1/api");
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 100L);
+        ReflectionTestUtils.setField(client, "readTimeoutMs", 100L);
+        ReflectionTestUtils.setField(client, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(client, "executionMode", "platform");
+        ReflectionTestUtils.setField(client, "callbackThreads", 1);
+        ReflectionTestUtils.setField(client, "completionThreads", 1);
+        ReflectionTestUtils.setField(client, "queryWay", "query");
+        ReflectionTestUtils.setField(client, "failureThreshold", 1);
+        ReflectionTestUtils.setField(client, "openDurationMs", 0L);
+        client.init();
+        circuitBreaker = (CircuitBreaker) ReflectionTestUtils.getField(client, "circuitBreaker");
+        permits = (Semaphore) ReflectionTestUtils.getField(client, "permits");
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    /**
+     * 熔断时间结束后，探测请求因并发许可不足被拒绝时不应占用探测机会，熔断器仍能恢复
+     */
+    @Test
+    void probeRejectedByPermitsDoesNotWedgeCircuitBreaker() {
+        circuitBreaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        permits.acquireUninterruptibly();
+        assertTrue(client.getAsync("http://127.0.0.1:1/api").isCompletedExceptionally());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        permits.release();
+
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    /**
+     * 熔断器拒绝请求时归还已取得的并发许可
+     */
+    @Test
+    void requestRejectedByCircuitBreakerReleasesPermit() {
+        ReflectionTestUtils.setField(client, "circuitBreaker", new CircuitBreaker(1, 60000));
+        circuitBreaker = (CircuitBreaker) ReflectionTestUtils.getField(client, "circuitBreaker");
+        circuitBreaker.recordFailure();
+
+        assertTrue(client.getAsync("http://127.0.0.1:1/api").isCompletedExceptionally());
+        assertEquals(1, permits.availablePermits());
+    }
+}
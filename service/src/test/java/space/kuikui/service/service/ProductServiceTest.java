@@ -0,0 +1,158 @@
+package space.kuikui.service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import space.kuikui.service.entity.CardCode;
+import space.kuikui.service.entity.Product;
+import space.kuikui.service.repository.CardCodeRepository;
+import space.kuikui.service.repository.ProductRepository;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductServiceTest {
+
+    private static final Long PRODUCT_ID = 1L;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private CardCodeRepository cardCodeRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ProductCatalogCache productCatalogCache;
+
+    private ProductService productService;
+
+    private CardCodeService cardCodeService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(productCatalogCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(productCatalogCache, "maxSize", 1000);
+        StatisticsService statisticsService = new StatisticsService();
+
+        productService = new ProductService();
+        ReflectionTestUtils.setField(productService, "productRepository", productRepository);
+        ReflectionTestUtils.setField(productService, "cardCodeRepository", cardCodeRepository);
+        ReflectionTestUtils.setField(productService, "productCatalogCache", productCatalogCache);
+        ReflectionTestUtils.setField(productService, "statisticsService", statisticsService);
+        ReflectionTestUtils.setField(productService, "transactionTemplate", transactionTemplate);
+
+        cardCodeService = new CardCodeService();
+        ReflectionTestUtils.setField(cardCodeService, "cardCodeRepository", cardCodeRepository);
+        ReflectionTestUtils.setField(cardCodeService, "productRepository", productRepository);
+        ReflectionTestUtils.setField(cardCodeService, "productCatalogCache", productCatalogCache);
+        ReflectionTestUtils.setField(cardCodeService, "statisticsService", statisticsService);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        lenient().when(productRepository.findAllIds()).thenReturn(List.of(PRODUCT_ID));
+    }
+
+    /**
+     * 对账口径：剩余数量为未使用的卡密数，销量为已使用的卡密数加上已归档的卡密数
+     */
+    @Test
+    void reconcileCardCountsCountsArchivedCodesAsSold() {
+        when(productRepository.lockById(PRODUCT_ID)).thenReturn(product(5, 2));
+        stubCardCodeCounts(5, 2, 1);
+
+        assertEquals(1, productService.reconcileCardCounts());
+        verify(productRepository).updateCounts(PRODUCT_ID, 5, 3);
+    }
+
+    /**
+     * 删除已使用的卡密时销量减一，之后对账不会再认为有偏差
+     */
+    @Test
+    void deletingUsedCardCodeKeepsSoldCountInLineWithReconcile() {
+        CardCode used = new CardCode();
+        used.setId(10L);
+        used.setProductId(PRODUCT_ID);
+        used.setIsUsed(true);
+        when(cardCodeRepository.selectById(10L)).thenReturn(used);
+        when(cardCodeRepository.deleteById(10L)).thenReturn(1);
+
+        cardCodeService.deleteCardCode(10L);
+        verify(productRepository).adjustCounts(PRODUCT_ID, 0, -1);
+
+        // 删除前 5 张未使用、3 张已使用（其中 1 张已归档），删除后销量为 2
+        when(productRepository.lockById(PRODUCT_ID)).thenReturn(product(5, 2));
+        stubCardCodeCounts(5, 1, 1);
+
+        assertEquals(0, productService.reconcileCardCounts());
+        verify(productRepository, never()).updateCounts(any(), anyInt(), anyInt());
+    }
+
+    /**
+     * 删除未使用的卡密只减少剩余数量
+     */
+    @Test
+    void deletingUnusedCardCodeOnlyReducesCardCount() {
+        CardCode unused = new CardCode();
+        unused.setId(11L);
+        unused.setProductId(PRODUCT_ID);
+        unused.setIsUsed(false);
+        when(cardCodeRepository.selectById(11L)).thenReturn(unused);
+        when(cardCodeRepository.deleteById(11L)).thenReturn(1);
+
+        cardCodeService.deleteCardCode(11L);
+        verify(productRepository).adjustCounts(PRODUCT_ID, -1, 0);
+    }
+
+    /**
+     * 数量增量直接调整缓存中的商品，不重新查询数据库，也不影响已返回的副本
+     */
+    @Test
+    void countDeltaUpdatesCachedProductWithoutReload() {
+        when(productRepository.selectById(PRODUCT_ID)).thenReturn(product(5, 2));
+        Product loaded = productService.getProductById(PRODUCT_ID);
+        long version = productCatalogCache.getVersion();
+
+        productCatalogCache.applyCountDelta(PRODUCT_ID, -1, 1);
+
+        Product cached = productService.getProductById(PRODUCT_ID);
+        assertEquals(4, cached.getCardCount());
+        assertEquals(3, cached.getSoldCount());
+        assertEquals(5, loaded.getCardCount());
+        assertEquals(version + 1, productCatalogCache.getVersion());
+        verify(productRepository, times(1)).selectById(anyLong());
+    }
+
+    private void stubCardCodeCounts(int unused, int used, int archived) {
+        when(cardCodeRepository.countByProductIdAndIsUsedFalse(PRODUCT_ID)).thenReturn(unused);
+        when(cardCodeRepository.countByProductIdAndIsUsedTrue(PRODUCT_ID)).thenReturn(used);
+        when(cardCodeRepository.countArchivedByProductId(PRODUCT_ID)).thenReturn(archived);
+    }
+
+    private static Product product(int cardCount, int soldCount) {
+        Product product = new Product();
+        product.setId(PRODUCT_ID);
+        product.setName("商品");
+        product.setCardCount(cardCount);
+        product.setSoldCount(soldCount);
+        return product;
+    }
+}
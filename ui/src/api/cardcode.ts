@@ -12,6 +12,36 @@ export const importCardCodes = async (data: any) => {
   return response.data
 }
 
+export const importCardCodesFile = async (productId: string, file: File) => {
+  const formData = new FormData()
+  formData.append('productId', productId)
+  formData.append('file', file)
+  const response = await authApi.post(`/cardcodes/import/stream`, formData, {
+    headers: { 'Content-Type': 'multipart/form-data' }
+  })
+  return response.data
+}
+
+export const submitImportJob = async (productId: string, file: File) => {
+  const formData = new FormData()
+  formData.append('productId', productId)
+  formData.append('file', file)
+  const response = await authApi.post(`/cardcodes/jobs/import`, formData, {
+    headers: { 'Content-Type': 'multipart/form-data' }
+  })
+  return response.data
+}
+
+export const submitGenerateJob = async (data: any) => {
+  const response = await authApi.post(`/cardcodes/jobs/generate`, data)
+  return response.data
+}
+
+export const getJobProgress = async (jobId: string) => {
+  const response = await authApi.get(`/cardcodes/jobs/${jobId}`)
+  return response.data
+}
+
 export const getCardCodesByProduct = async (productId: string) => {
   const response = await authApi.get(`/cardcodes/product/${productId}`)
   return response.data
@@ -54,6 +54,21 @@ export const getOrdersList = async (page: number = 1, size: number = 20, status?
   return response.data;
 };
 
+/**
+ * 游标分页获取订单列表，cursor 传上一页返回的 nextCursor，首页不传
+ */
+export const getOrdersListByCursor = async (size: number = 20, status?: string, cursor?: string) => {
+  const params: any = { mode: 'cursor', size };
+  if (status) {
+    params.status = status;
+  }
+  if (cursor) {
+    params.cursor = cursor;
+  }
+  const response = await orderApi.get('/orders/list', { params });
+  return response.data;
+};
+
 /**
  * 根据状态获取订单列表
  */
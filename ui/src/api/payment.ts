@@ -13,6 +13,8 @@ interface CreateOrderParams {
 
 interface QueryKeyParams {
   queryKey: string;    // 查询密钥
+  page?: number;       // 页码（从1开始）
+  size?: number;       // 每页订单数，默认20，最多100
 }
 
 const API_BASE_URL = 'http://localhost:8080/api';
@@ -44,4 +46,38 @@ export const getOrdersByPhone = async (phone: string) => {
 export const getOrderDetails = async (orderId: string) => {
   const response = await axios.get(`${API_BASE_URL}/payment/order/${orderId}`);
   return response.data;
-}; 
\ No newline at end of file
+}; 
+/**
+ * 订阅订单发货事件（SSE），代替轮询订单详情
+ * 发货后回调 onDelivered、订单过期后回调 onExpired，并关闭连接；服务端单次等待超时后浏览器会自动重新订阅
+ * @returns 取消订阅的函数
+ */
+export const subscribeOrderDelivery = (
+  orderId: string,
+  onDelivered: (data: any) => void,
+  onError?: (message: string) => void,
+  onExpired?: (data: any) => void
+) => {
+  const source = new EventSource(`${API_BASE_URL}/payment/order/${encodeURIComponent(orderId)}/events`);
+
+  source.addEventListener('delivered', (event) => {
+    source.close();
+    onDelivered(JSON.parse((event as MessageEvent).data));
+  });
+
+  source.addEventListener('expired', (event) => {
+    source.close();
+    onExpired?.(JSON.parse((event as MessageEvent).data));
+  });
+
+  source.addEventListener('error', (event) => {
+    // 服务端主动返回的错误事件带有数据，连接断开时浏览器自动重连
+    const data = (event as MessageEvent).data;
+    if (data) {
+      source.close();
+      onError?.(JSON.parse(data).error);
+    }
+  });
+
+  return () => source.close();
+};